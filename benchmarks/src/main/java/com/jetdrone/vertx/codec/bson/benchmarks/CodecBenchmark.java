@@ -0,0 +1,85 @@
+package com.jetdrone.vertx.codec.bson.benchmarks;
+
+import com.jetdrone.vertx.codec.bson.BSONDocument;
+import com.jetdrone.vertx.codec.bson.BSONMessageCodec;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.impl.codecs.JsonObjectMessageCodec;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode, decode and round trip throughput of {@link BSONMessageCodec} against the Vert.x {@link JsonObject} codec on
+ * the same data (binary values are base64 strings in JSON). Run with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+  @Param({"flat", "wide", "nested", "arrays", "strings", "binary"})
+  public String shape;
+
+  private final BSONMessageCodec bson = new BSONMessageCodec();
+  private final JsonObjectMessageCodec json = new JsonObjectMessageCodec();
+
+  private BSONDocument document;
+  private Buffer bsonBuffer;
+
+  private JsonObject jsonObject;
+  private Buffer jsonBuffer;
+
+  @Setup
+  public void setup() {
+    document = Documents.create(shape);
+    bsonBuffer = Buffer.buffer();
+    bson.encodeToWire(bsonBuffer, document);
+
+    jsonObject = new JsonObject(Json.encode(document));
+    jsonBuffer = Buffer.buffer();
+    json.encodeToWire(jsonBuffer, jsonObject);
+  }
+
+  @Benchmark
+  public Buffer encodeBSON() {
+    Buffer buffer = Buffer.buffer();
+    bson.encodeToWire(buffer, document);
+    return buffer;
+  }
+
+  @Benchmark
+  public BSONDocument decodeBSON() {
+    return bson.decodeFromWire(0, bsonBuffer);
+  }
+
+  @Benchmark
+  public BSONDocument roundTripBSON() {
+    Buffer buffer = Buffer.buffer();
+    bson.encodeToWire(buffer, document);
+    return bson.decodeFromWire(0, buffer);
+  }
+
+  @Benchmark
+  public Buffer encodeJson() {
+    Buffer buffer = Buffer.buffer();
+    json.encodeToWire(buffer, jsonObject);
+    return buffer;
+  }
+
+  @Benchmark
+  public JsonObject decodeJson() {
+    return json.decodeFromWire(0, jsonBuffer);
+  }
+
+  @Benchmark
+  public JsonObject roundTripJson() {
+    Buffer buffer = Buffer.buffer();
+    json.encodeToWire(buffer, jsonObject);
+    return json.decodeFromWire(0, buffer);
+  }
+}
@@ -0,0 +1,132 @@
+package com.jetdrone.vertx.codec.bson.benchmarks;
+
+import com.jetdrone.vertx.codec.bson.BSONDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Document shapes used by the benchmarks.
+ */
+final class Documents {
+
+  private Documents() {
+  }
+
+  static BSONDocument create(String shape) {
+    switch (shape) {
+      case "flat":
+        return flat();
+      case "wide":
+        return wide();
+      case "nested":
+        return nested();
+      case "arrays":
+        return arrays();
+      case "strings":
+        return strings();
+      case "binary":
+        return binary();
+      default:
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+  }
+
+  /**
+   * A typical small message, a dozen scalar fields.
+   */
+  private static BSONDocument flat() {
+    BSONDocument document = new BSONDocument();
+    document.put("id", 12345);
+    document.put("timestamp", 1435312345678L);
+    document.put("user", "pmlopes");
+    document.put("action", "update");
+    document.put("score", 98.5);
+    document.put("active", true);
+    document.put("retries", 3);
+    document.put("region", "eu-west-1");
+    document.put("version", 42L);
+    document.put("ratio", 0.125);
+    document.put("deleted", false);
+    document.put("note", null);
+    return document;
+  }
+
+  /**
+   * Many top level fields.
+   */
+  private static BSONDocument wide() {
+    BSONDocument document = new BSONDocument();
+    for (int i = 0; i < 500; i++) {
+      document.put("field" + i, i % 2 == 0 ? (Object) i : "value" + i);
+    }
+    return document;
+  }
+
+  /**
+   * Documents embedded 20 levels deep.
+   */
+  private static BSONDocument nested() {
+    BSONDocument document = new BSONDocument();
+    document.put("level", 0);
+    document.put("name", "leaf");
+    for (int i = 1; i <= 20; i++) {
+      BSONDocument parent = new BSONDocument();
+      parent.put("level", i);
+      parent.put("name", "node" + i);
+      parent.put("child", document);
+      document = parent;
+    }
+    return document;
+  }
+
+  /**
+   * Large numeric arrays.
+   */
+  private static BSONDocument arrays() {
+    List<Object> ints = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      ints.add(i);
+    }
+    List<Object> doubles = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      doubles.add(i / 3.0);
+    }
+    BSONDocument document = new BSONDocument();
+    document.put("ints", ints);
+    document.put("doubles", doubles);
+    return document;
+  }
+
+  /**
+   * Long ASCII and non ASCII strings.
+   */
+  private static BSONDocument strings() {
+    StringBuilder ascii = new StringBuilder();
+    StringBuilder unicode = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      ascii.append("lorem ipsum");
+      unicode.append("café ação ");
+    }
+    BSONDocument document = new BSONDocument();
+    for (int i = 0; i < 50; i++) {
+      document.put("s" + i, i % 5 == 0 ? unicode.toString() : ascii.toString());
+    }
+    return document;
+  }
+
+  /**
+   * A few large binary fields.
+   */
+  private static BSONDocument binary() {
+    BSONDocument document = new BSONDocument();
+    for (int i = 0; i < 4; i++) {
+      byte[] data = new byte[16 * 1024];
+      for (int j = 0; j < data.length; j++) {
+        data[j] = (byte) (i + j);
+      }
+      document.put("blob" + i, data);
+    }
+    return document;
+  }
+}
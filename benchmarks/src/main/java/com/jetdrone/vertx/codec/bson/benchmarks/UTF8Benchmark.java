@@ -0,0 +1,75 @@
+package com.jetdrone.vertx.codec.bson.benchmarks;
+
+import com.jetdrone.vertx.codec.bson.impl.UTF8;
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in place {@link UTF8} codec against the JDK path it replaced ({@code String.getBytes} and
+ * {@code Buffer.getString}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UTF8Benchmark {
+
+  @Param({"ascii", "latin", "cjk"})
+  public String charset;
+
+  @Param({"8", "256"})
+  public int length;
+
+  private String value;
+  private Buffer encoded;
+  private int utfLength;
+
+  @Setup
+  public void setup() {
+    String alphabet;
+    switch (charset) {
+      case "ascii":
+        alphabet = "abcdefghijklmnopqrstuvwxyz";
+        break;
+      case "latin":
+        alphabet = "abcçãéêíóõú";
+        break;
+      default:
+        alphabet = "数据编码解码消息";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append(alphabet.charAt(i % alphabet.length()));
+    }
+    value = sb.toString();
+    encoded = Buffer.buffer(value.getBytes(StandardCharsets.UTF_8));
+    utfLength = encoded.length();
+  }
+
+  @Benchmark
+  public Buffer encodeInPlace() {
+    Buffer buffer = Buffer.buffer();
+    UTF8.append(buffer, value, UTF8.length(value));
+    return buffer;
+  }
+
+  @Benchmark
+  public Buffer encodeJdk() {
+    return Buffer.buffer().appendBytes(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public String decodeInPlace() {
+    return UTF8.read(encoded, 0, utfLength);
+  }
+
+  @Benchmark
+  public String decodeJdk() {
+    return encoded.getString(0, utfLength, "UTF-8");
+  }
+}
@@ -0,0 +1,346 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.*;
+
+/**
+ * Encode and decode statistics of a {@link BSONMessageCodec}, enabled with
+ * {@link BSONCodecOptions#setMetricsEnabled(boolean)}.
+ * <p>
+ * Counts, document sizes and latencies (in nanoseconds) are recorded in fixed size log-linear histograms with about 6%
+ * precision, recording never allocates or locks. The getters return snapshots, so the metrics can be polled or
+ * registered as an MXBean:
+ * <pre>
+ * ManagementFactory.getPlatformMBeanServer()
+ *     .registerMBean(codec.getMetrics(), new ObjectName("com.jetdrone:type=BSONCodec,name=orders"));
+ * </pre>
+ * A codec sees neither the address nor the sender of a message, to get statistics per address register a codec
+ * instance per address.
+ */
+public final class BSONCodecMetrics implements BSONCodecMetricsMXBean {
+
+  private final Recorder encode = new Recorder();
+  private final Recorder decode = new Recorder();
+  private final AtomicLongArray types = new AtomicLongArray(256);
+
+  BSONCodecMetrics() {
+  }
+
+  @Override
+  public Operation getEncode() {
+    return encode.snapshot();
+  }
+
+  @Override
+  public Operation getDecode() {
+    return decode.snapshot();
+  }
+
+  @Override
+  public Map<String, Long> getTypes() {
+    Map<String, Long> mix = new TreeMap<>();
+    for (int i = 0; i < types.length(); i++) {
+      long count = types.get(i);
+      if (count > 0) {
+        mix.put(typeName((byte) i), count);
+      }
+    }
+    return Collections.unmodifiableMap(mix);
+  }
+
+  @Override
+  public void reset() {
+    encode.reset();
+    decode.reset();
+    for (int i = 0; i < types.length(); i++) {
+      types.set(i, 0);
+    }
+  }
+
+  void encoded(Buffer buffer, int pos, long nanos) {
+    encode.record(LE.getInt(buffer, pos), nanos);
+    countTypes(buffer, pos);
+  }
+
+  void decoded(Buffer buffer, int pos, long nanos) {
+    decode.record(LE.getInt(buffer, pos), nanos);
+    countTypes(buffer, pos);
+  }
+
+  private void countTypes(Buffer buffer, int pos) {
+    // skip the last 0x00
+    int end = pos + LE.getInt(buffer, pos) - 1;
+    pos += 4;
+
+    while (pos < end) {
+      byte type = LE.getByte(buffer, pos);
+      types.incrementAndGet(type & 0xFF);
+      pos = LE.skipCString(buffer, pos + 1);
+      pos += valueLength(buffer, type, pos);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private static String typeName(byte type) {
+    switch (type) {
+      case FLOAT:
+        return "double";
+      case STRING:
+        return "string";
+      case EMBEDDED_DOCUMENT:
+        return "document";
+      case ARRAY:
+        return "array";
+      case BINARY:
+        return "binary";
+      case UNDEFINED:
+        return "undefined";
+      case OBJECT_ID:
+        return "objectId";
+      case BOOLEAN:
+        return "boolean";
+      case UTC_DATETIME:
+        return "date";
+      case NULL:
+        return "null";
+      case REGEX:
+        return "regex";
+      case DBPOINTER:
+        return "dbPointer";
+      case JSCODE:
+        return "javascript";
+      case SYMBOL:
+        return "symbol";
+      case JSCODE_WS:
+        return "javascriptWithScope";
+      case INT32:
+        return "int";
+      case TIMESTAMP:
+        return "timestamp";
+      case INT64:
+        return "long";
+      case DECIMAL128:
+        return "decimal";
+      case MINKEY:
+        return "minKey";
+      case MAXKEY:
+        return "maxKey";
+      default:
+        return "0x" + Integer.toHexString(type & 0xFF);
+    }
+  }
+
+  /**
+   * Statistics of one operation.
+   */
+  public static final class Operation {
+    private final long count;
+    private final long bytes;
+    private final Distribution size;
+    private final Distribution latency;
+
+    Operation(long count, long bytes, Distribution size, Distribution latency) {
+      this.count = count;
+      this.bytes = bytes;
+      this.size = size;
+      this.latency = latency;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return total number of bytes
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @return distribution of the document sizes in bytes
+     */
+    public Distribution getSize() {
+      return size;
+    }
+
+    /**
+     * @return distribution of the latencies in nanoseconds
+     */
+    public Distribution getLatency() {
+      return latency;
+    }
+  }
+
+  /**
+   * Snapshot of a histogram, the percentiles are upper bounds of the histogram buckets.
+   */
+  public static final class Distribution {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+
+    Distribution(long[] counts, long sum) {
+      long count = 0;
+      for (long c : counts) {
+        count += c;
+      }
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getMean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public long getMin() {
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] > 0) {
+          return Histogram.lowerBound(i);
+        }
+      }
+      return 0;
+    }
+
+    public long getMax() {
+      for (int i = counts.length - 1; i >= 0; i--) {
+        if (counts[i] > 0) {
+          return Histogram.upperBound(i);
+        }
+      }
+      return 0;
+    }
+
+    public long getP50() {
+      return percentile(50);
+    }
+
+    public long getP90() {
+      return percentile(90);
+    }
+
+    public long getP99() {
+      return percentile(99);
+    }
+
+    public long getP999() {
+      return percentile(99.9);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value below which the given percentage of the recorded values fall
+     */
+    public long percentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Histogram.upperBound(i);
+        }
+      }
+      return getMax();
+    }
+  }
+
+  private static final class Recorder {
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final Histogram size = new Histogram();
+    private final Histogram latency = new Histogram();
+
+    void record(int length, long elapsed) {
+      bytes.add(length);
+      nanos.add(elapsed);
+      size.record(length);
+      latency.record(elapsed);
+    }
+
+    Operation snapshot() {
+      Distribution sizes = new Distribution(size.counts(), bytes.sum());
+      return new Operation(sizes.getCount(), bytes.sum(), sizes, new Distribution(latency.counts(), nanos.sum()));
+    }
+
+    void reset() {
+      bytes.reset();
+      nanos.reset();
+      size.reset();
+      latency.reset();
+    }
+  }
+
+  /**
+   * Log-linear histogram of positive longs: values below 32 have their own bucket, above that every power of 2 is
+   * split in 16 buckets.
+   */
+  static final class Histogram {
+    private static final int SUB_BUCKETS = 16;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    // 32 linear buckets + 16 per power of 2 from 2^5 to 2^62
+    private static final int BUCKETS = LINEAR + 58 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long value) {
+      counts.incrementAndGet(index(Math.max(0, value)));
+    }
+
+    long[] counts() {
+      long[] copy = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        copy[i] = counts.get(i);
+      }
+      return copy;
+    }
+
+    void reset() {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts.set(i, 0);
+      }
+    }
+
+    static int index(long value) {
+      if (value < LINEAR) {
+        return (int) value;
+      }
+      // value >>> shift is in [16, 32)
+      int shift = 63 - Long.numberOfLeadingZeros(value) - 4;
+      return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long lowerBound(int index) {
+      if (index < LINEAR) {
+        return index;
+      }
+      int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+      long top = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+      return top << shift;
+    }
+
+    static long upperBound(int index) {
+      if (index < LINEAR) {
+        return index;
+      }
+      int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+      long top = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+      return ((top + 1) << shift) - 1;
+    }
+  }
+}
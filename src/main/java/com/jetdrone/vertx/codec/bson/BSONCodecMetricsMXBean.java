@@ -0,0 +1,20 @@
+package com.jetdrone.vertx.codec.bson;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link BSONCodecMetrics}.
+ */
+public interface BSONCodecMetricsMXBean {
+
+  BSONCodecMetrics.Operation getEncode();
+
+  BSONCodecMetrics.Operation getDecode();
+
+  /**
+   * @return number of top level values per BSON type name, for encoded and decoded documents
+   */
+  Map<String, Long> getTypes();
+
+  void reset();
+}
@@ -0,0 +1,179 @@
+package com.jetdrone.vertx.codec.bson;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Options to tune the behavior of {@link BSONMessageCodec}.
+ */
+public class BSONCodecOptions {
+
+  /**
+   * The default value of presize = false
+   */
+  public static final boolean DEFAULT_PRESIZE = false;
+
+  /**
+   * The default value of primitive arrays = false
+   */
+  public static final boolean DEFAULT_PRIMITIVE_ARRAYS = false;
+
+  /**
+   * The default value of metrics enabled = false
+   */
+  public static final boolean DEFAULT_METRICS_ENABLED = false;
+
+  /**
+   * The default value of decimals as BigDecimal = false
+   */
+  public static final boolean DEFAULT_DECIMALS_AS_BIG_DECIMAL = false;
+
+  /**
+   * The default value of immutable delivery = false
+   */
+  public static final boolean DEFAULT_IMMUTABLE_DELIVERY = false;
+
+  private boolean presize;
+  private boolean primitiveArrays;
+  private Set<String> projection;
+  private boolean metricsEnabled;
+  private boolean decimalsAsBigDecimal;
+  private boolean immutableDelivery;
+
+  public BSONCodecOptions() {
+    presize = DEFAULT_PRESIZE;
+    primitiveArrays = DEFAULT_PRIMITIVE_ARRAYS;
+    metricsEnabled = DEFAULT_METRICS_ENABLED;
+    decimalsAsBigDecimal = DEFAULT_DECIMALS_AS_BIG_DECIMAL;
+    immutableDelivery = DEFAULT_IMMUTABLE_DELIVERY;
+  }
+
+  public BSONCodecOptions(BSONCodecOptions other) {
+    presize = other.presize;
+    primitiveArrays = other.primitiveArrays;
+    projection = other.projection;
+    metricsEnabled = other.metricsEnabled;
+    decimalsAsBigDecimal = other.decimalsAsBigDecimal;
+    immutableDelivery = other.immutableDelivery;
+  }
+
+  /**
+   * @return true if the exact encoded size is computed before encoding
+   */
+  public boolean isPresize() {
+    return presize;
+  }
+
+  /**
+   * Compute the exact encoded size of a document before encoding it so the destination buffer is grown at most once.
+   * This costs an extra walk over the document and pays off for large documents.
+   *
+   * @param presize true to compute the size up front
+   * @return a reference to this, so the API can be used fluently
+   */
+  public BSONCodecOptions setPresize(boolean presize) {
+    this.presize = presize;
+    return this;
+  }
+
+  /**
+   * @return true if numeric arrays are decoded into primitive arrays
+   */
+  public boolean isPrimitiveArrays() {
+    return primitiveArrays;
+  }
+
+  /**
+   * Decode non empty arrays where all elements are 32 bit integers, 64 bit integers or doubles into {@code int[]},
+   * {@code long[]} or {@code double[]} instead of a {@code List} of boxed values.
+   *
+   * @param primitiveArrays true to decode numeric arrays into primitive arrays
+   * @return a reference to this, so the API can be used fluently
+   */
+  public BSONCodecOptions setPrimitiveArrays(boolean primitiveArrays) {
+    this.primitiveArrays = primitiveArrays;
+    return this;
+  }
+
+  /**
+   * @return the decoded field paths, null when all fields are decoded
+   */
+  public Set<String> getProjection() {
+    return projection;
+  }
+
+  /**
+   * Decode only the given fields, the values of the other fields are skipped by their length without being decoded.
+   * Paths are dotted, e.g. {@code "meta.tenant"} only decodes the field {@code tenant} of the embedded document
+   * {@code meta}, inside arrays the path applies to the embedded documents of the array.
+   *
+   * @param projection the field paths to decode, null to decode all fields
+   * @return a reference to this, so the API can be used fluently
+   */
+  public BSONCodecOptions setProjection(Collection<String> projection) {
+    this.projection = projection == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(projection));
+    return this;
+  }
+
+  /**
+   * @return true if the codec records statistics
+   */
+  public boolean isMetricsEnabled() {
+    return metricsEnabled;
+  }
+
+  /**
+   * Record counts, sizes, latencies and value types of the encoded and decoded documents, see
+   * {@link BSONCodecMetrics}. Counting the value types walks the top level elements of every document once more after
+   * it is encoded or decoded, when disabled the codec neither walks the documents nor reads the clock.
+   *
+   * @param metricsEnabled true to record statistics
+   * @return a reference to this, so the API can be used fluently
+   */
+  public BSONCodecOptions setMetricsEnabled(boolean metricsEnabled) {
+    this.metricsEnabled = metricsEnabled;
+    return this;
+  }
+
+  /**
+   * @return true if Decimal128 values are decoded into BigDecimal
+   */
+  public boolean isDecimalsAsBigDecimal() {
+    return decimalsAsBigDecimal;
+  }
+
+  /**
+   * Decode Decimal128 values into {@link java.math.BigDecimal} instead of {@link Decimal128}. NaN and the infinities
+   * can not be represented and fail to decode, negative zero becomes zero.
+   *
+   * @param decimalsAsBigDecimal true to decode into BigDecimal
+   * @return a reference to this, so the API can be used fluently
+   */
+  public BSONCodecOptions setDecimalsAsBigDecimal(boolean decimalsAsBigDecimal) {
+    this.decimalsAsBigDecimal = decimalsAsBigDecimal;
+    return this;
+  }
+
+  /**
+   * @return true if local consumers receive an immutable snapshot
+   */
+  public boolean isImmutableDelivery() {
+    return immutableDelivery;
+  }
+
+  /**
+   * Hand local consumers an {@link ImmutableBSONDocument} instead of the sent document, so they can not modify the
+   * sender's document or each other's, {@code put} and {@code remove} on a received document then throw
+   * {@link UnsupportedOperationException}. A mutable document is frozen once per consumer, which walks the whole
+   * document, only an {@link ImmutableBSONDocument} is handed out as is.
+   *
+   * @param immutableDelivery true to deliver immutable snapshots
+   * @return a reference to this, so the API can be used fluently
+   */
+  public BSONCodecOptions setImmutableDelivery(boolean immutableDelivery) {
+    this.immutableDelivery = immutableDelivery;
+    return this;
+  }
+}
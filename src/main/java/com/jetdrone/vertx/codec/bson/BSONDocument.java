@@ -3,4 +3,11 @@ package com.jetdrone.vertx.codec.bson;
 import java.util.LinkedHashMap;
 
 public class BSONDocument extends LinkedHashMap<String, Object> {
+
+  /**
+   * @return an immutable copy of this document, see {@link ImmutableBSONDocument}
+   */
+  public ImmutableBSONDocument snapshot() {
+    return ImmutableBSONDocument.copyOf(this);
+  }
 }
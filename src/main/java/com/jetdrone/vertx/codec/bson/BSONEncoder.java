@@ -0,0 +1,36 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.Scratch;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Encodes values of a Java type, custom encoders are registered with
+ * {@link BSONMessageCodec#registerEncoder(Class, BSONEncoder)}.
+ *
+ * @param <T> the type of the encoded values
+ */
+@FunctionalInterface
+public interface BSONEncoder<T> {
+
+  /**
+   * Appends the value, the element type and name are written by the codec.
+   *
+   * @return the BSON type of the written value, one of the type constants of {@link BSONMessageCodec}
+   */
+  byte encode(Buffer buffer, T value);
+
+  /**
+   * Number of bytes {@link #encode(Buffer, Object)} writes for the value, used to size the destination up front. The
+   * default implementation encodes the value into the per thread scratch buffer, encoders should override it when the
+   * size is cheap to compute.
+   */
+  default int size(T value) {
+    Buffer buffer = Scratch.acquire();
+    try {
+      encode(buffer, value);
+      return buffer.length();
+    } finally {
+      Scratch.release(buffer);
+    }
+  }
+}
@@ -0,0 +1,505 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import com.jetdrone.vertx.codec.bson.impl.UTF8;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.*;
+
+/**
+ * Registry of the encoders per Java type.
+ * <p>
+ * The encoder of a class is resolved once, walking its superclasses and then its interfaces until a registered type is
+ * found, and cached in a {@link ClassValue}, so dispatching a value is a single lookup. Registering an encoder
+ * invalidates the resolved encoders.
+ */
+final class BSONEncoders {
+
+  private static final int REGEX_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL |
+      Pattern.UNICODE_CASE | Pattern.COMMENTS | Pattern.UNICODE_CHARACTER_CLASS;
+
+  private static final Map<Class<?>, BSONEncoder<?>> REGISTERED = new ConcurrentHashMap<>();
+
+  private static final AtomicInteger GENERATION = new AtomicInteger();
+
+  private static final class Resolved {
+    final BSONEncoder<Object> encoder;
+    final int generation;
+
+    Resolved(BSONEncoder<Object> encoder, int generation) {
+      this.encoder = encoder;
+      this.generation = generation;
+    }
+  }
+
+  private static final ClassValue<Resolved> RESOLVED = new ClassValue<Resolved>() {
+    @Override
+    protected Resolved computeValue(Class<?> type) {
+      // read the generation first so a concurrent registration makes this entry stale
+      int current = GENERATION.get();
+      return new Resolved(resolve(type), current);
+    }
+  };
+
+  private BSONEncoders() {
+  }
+
+  static <T> void register(Class<T> type, BSONEncoder<? super T> encoder) {
+    REGISTERED.put(type, encoder);
+    GENERATION.incrementAndGet();
+  }
+
+  static BSONEncoder<Object> lookup(Class<?> type) {
+    Resolved resolved = RESOLVED.get(type);
+    if (resolved.generation != GENERATION.get()) {
+      RESOLVED.remove(type);
+      resolved = RESOLVED.get(type);
+    }
+    return resolved.encoder;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static BSONEncoder<Object> resolve(Class<?> type) {
+    // most specific class first
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      BSONEncoder<?> encoder = REGISTERED.get(c);
+      if (encoder != null) {
+        return (BSONEncoder<Object>) encoder;
+      }
+    }
+
+    // then the interfaces, breadth first
+    Deque<Class<?>> queue = new ArrayDeque<>();
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      Collections.addAll(queue, c.getInterfaces());
+    }
+    Set<Class<?>> seen = new HashSet<>();
+    while (!queue.isEmpty()) {
+      Class<?> c = queue.poll();
+      if (seen.add(c)) {
+        BSONEncoder<?> encoder = REGISTERED.get(c);
+        if (encoder != null) {
+          return (BSONEncoder<Object>) encoder;
+        }
+        Collections.addAll(queue, c.getInterfaces());
+      }
+    }
+
+    return new BSONEncoder<Object>() {
+      @Override
+      public byte encode(Buffer buffer, Object value) {
+        // TODO: JSON.js does not throw exception but ignores the value, should we do the same?
+        throw new EncodeException("Don't know how to encode: " + type.getName());
+      }
+
+      @Override
+      public int size(Object value) {
+        throw new EncodeException("Don't know how to encode: " + type.getName());
+      }
+    };
+  }
+
+  static {
+    register(Integer.class, new BSONEncoder<Integer>() {
+      @Override
+      public byte encode(Buffer buffer, Integer value) {
+        LE.appendInt(buffer, value);
+        return INT32;
+      }
+
+      @Override
+      public int size(Integer value) {
+        return 4;
+      }
+    });
+
+    register(Long.class, new BSONEncoder<Long>() {
+      @Override
+      public byte encode(Buffer buffer, Long value) {
+        LE.appendLong(buffer, value);
+        return INT64;
+      }
+
+      @Override
+      public int size(Long value) {
+        return 8;
+      }
+    });
+
+    register(Float.class, new BSONEncoder<Float>() {
+      @Override
+      public byte encode(Buffer buffer, Float value) {
+        LE.appendDouble(buffer, value);
+        return FLOAT;
+      }
+
+      @Override
+      public int size(Float value) {
+        return 8;
+      }
+    });
+
+    register(Double.class, new BSONEncoder<Double>() {
+      @Override
+      public byte encode(Buffer buffer, Double value) {
+        LE.appendDouble(buffer, value);
+        return FLOAT;
+      }
+
+      @Override
+      public int size(Double value) {
+        return 8;
+      }
+    });
+
+    register(String.class, new BSONEncoder<String>() {
+      @Override
+      public byte encode(Buffer buffer, String value) {
+        LE.appendString(buffer, value);
+        return STRING;
+      }
+
+      @Override
+      public int size(String value) {
+        return 4 + UTF8.length(value) + 1;
+      }
+    });
+
+    register(Boolean.class, new BSONEncoder<Boolean>() {
+      @Override
+      public byte encode(Buffer buffer, Boolean value) {
+        LE.appendBoolean(buffer, value);
+        return BOOLEAN;
+      }
+
+      @Override
+      public int size(Boolean value) {
+        return 1;
+      }
+    });
+
+    register(RawBSONDocument.class, new BSONEncoder<RawBSONDocument>() {
+      @Override
+      public byte encode(Buffer buffer, RawBSONDocument value) {
+        // already encoded, copy as is
+        buffer.appendBuffer(value.getBuffer());
+        return EMBEDDED_DOCUMENT;
+      }
+
+      @Override
+      public int size(RawBSONDocument value) {
+        return value.getBuffer().length();
+      }
+    });
+
+    register(RawBSONList.class, new BSONEncoder<RawBSONList>() {
+      @Override
+      public byte encode(Buffer buffer, RawBSONList value) {
+        // already encoded, copy as is
+        buffer.appendBuffer(value.getBuffer());
+        return ARRAY;
+      }
+
+      @Override
+      public int size(RawBSONList value) {
+        return value.getBuffer().length();
+      }
+    });
+
+    register(Map.class, new BSONEncoder<Map>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public byte encode(Buffer buffer, Map value) {
+        BSONMessageCodec.encode(buffer, (Map<String, ?>) value);
+        return EMBEDDED_DOCUMENT;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public int size(Map value) {
+        return BSONMessageCodec.sizeOf((Map<String, ?>) value);
+      }
+    });
+
+    register(List.class, new BSONEncoder<List>() {
+      @Override
+      public byte encode(Buffer buffer, List value) {
+        BSONMessageCodec.encode(buffer, value);
+        return ARRAY;
+      }
+
+      @Override
+      public int size(List value) {
+        return BSONMessageCodec.sizeOf(value);
+      }
+    });
+
+    // the Vert.x JSON types encode their backing map and list
+    register(JsonObject.class, new BSONEncoder<JsonObject>() {
+      @Override
+      public byte encode(Buffer buffer, JsonObject value) {
+        BSONMessageCodec.encode(buffer, value.getMap());
+        return EMBEDDED_DOCUMENT;
+      }
+
+      @Override
+      public int size(JsonObject value) {
+        return BSONMessageCodec.sizeOf(value.getMap());
+      }
+    });
+
+    register(JsonArray.class, new BSONEncoder<JsonArray>() {
+      @Override
+      public byte encode(Buffer buffer, JsonArray value) {
+        BSONMessageCodec.encode(buffer, value.getList());
+        return ARRAY;
+      }
+
+      @Override
+      public int size(JsonArray value) {
+        return BSONMessageCodec.sizeOf(value.getList());
+      }
+    });
+
+    register(int[].class, new BSONEncoder<int[]>() {
+      @Override
+      public byte encode(Buffer buffer, int[] value) {
+        BSONMessageCodec.encode(buffer, value);
+        return ARRAY;
+      }
+
+      @Override
+      public int size(int[] value) {
+        return BSONMessageCodec.sizeOf(value.length, 4);
+      }
+    });
+
+    register(long[].class, new BSONEncoder<long[]>() {
+      @Override
+      public byte encode(Buffer buffer, long[] value) {
+        BSONMessageCodec.encode(buffer, value);
+        return ARRAY;
+      }
+
+      @Override
+      public int size(long[] value) {
+        return BSONMessageCodec.sizeOf(value.length, 8);
+      }
+    });
+
+    register(double[].class, new BSONEncoder<double[]>() {
+      @Override
+      public byte encode(Buffer buffer, double[] value) {
+        BSONMessageCodec.encode(buffer, value);
+        return ARRAY;
+      }
+
+      @Override
+      public int size(double[] value) {
+        return BSONMessageCodec.sizeOf(value.length, 8);
+      }
+    });
+
+    register(UUID.class, new BSONEncoder<UUID>() {
+      @Override
+      public byte encode(Buffer buffer, UUID value) {
+        // append length
+        LE.appendInt(buffer, 16);
+        LE.appendByte(buffer, BINARY_UUID);
+        // append data
+        buffer.appendLong(value.getMostSignificantBits());
+        buffer.appendLong(value.getLeastSignificantBits());
+        return BINARY;
+      }
+
+      @Override
+      public int size(UUID value) {
+        return 5 + 16;
+      }
+    });
+
+    register(byte[].class, new BSONEncoder<byte[]>() {
+      @Override
+      public byte encode(Buffer buffer, byte[] value) {
+        // append length
+        LE.appendInt(buffer, value.length);
+        LE.appendByte(buffer, BINARY_BINARY);
+        // append data
+        LE.appendBytes(buffer, value);
+        return BINARY;
+      }
+
+      @Override
+      public int size(byte[] value) {
+        return 5 + value.length;
+      }
+    });
+
+    register(Buffer.class, new BSONEncoder<Buffer>() {
+      @Override
+      public byte encode(Buffer buffer, Buffer value) {
+        // append length
+        LE.appendInt(buffer, value.length());
+        LE.appendByte(buffer, BINARY_USERDEFINED);
+        // append data
+        buffer.appendBuffer(value);
+        return BINARY;
+      }
+
+      @Override
+      public int size(Buffer value) {
+        return 5 + value.length();
+      }
+    });
+
+    register(MD5.class, new BSONEncoder<MD5>() {
+      @Override
+      public byte encode(Buffer buffer, MD5 value) {
+        // append length
+        byte[] data = value.getHash();
+        LE.appendInt(buffer, data.length);
+        LE.appendByte(buffer, BINARY_MD5);
+        // append data
+        LE.appendBytes(buffer, data);
+        return BINARY;
+      }
+
+      @Override
+      public int size(MD5 value) {
+        return 5 + value.getHash().length;
+      }
+    });
+
+    register(ObjectId.class, new BSONEncoder<ObjectId>() {
+      @Override
+      public byte encode(Buffer buffer, ObjectId value) {
+        value.writeTo(buffer);
+        return OBJECT_ID;
+      }
+
+      @Override
+      public int size(ObjectId value) {
+        return 12;
+      }
+    });
+
+    register(Decimal128.class, new BSONEncoder<Decimal128>() {
+      @Override
+      public byte encode(Buffer buffer, Decimal128 value) {
+        value.writeTo(buffer);
+        return DECIMAL128;
+      }
+
+      @Override
+      public int size(Decimal128 value) {
+        return 16;
+      }
+    });
+
+    register(BigDecimal.class, new BSONEncoder<BigDecimal>() {
+      @Override
+      public byte encode(Buffer buffer, BigDecimal value) {
+        try {
+          Decimal128.valueOf(value).writeTo(buffer);
+        } catch (NumberFormatException e) {
+          throw new EncodeException(e.getMessage());
+        }
+        return DECIMAL128;
+      }
+
+      @Override
+      public int size(BigDecimal value) {
+        return 16;
+      }
+    });
+
+    register(Date.class, new BSONEncoder<Date>() {
+      @Override
+      public byte encode(Buffer buffer, Date value) {
+        LE.appendLong(buffer, value.getTime());
+        return UTC_DATETIME;
+      }
+
+      @Override
+      public int size(Date value) {
+        return 8;
+      }
+    });
+
+    register(Timestamp.class, new BSONEncoder<Timestamp>() {
+      @Override
+      public byte encode(Buffer buffer, Timestamp value) {
+        LE.appendLong(buffer, value.getTime());
+        return TIMESTAMP;
+      }
+
+      @Override
+      public int size(Timestamp value) {
+        return 8;
+      }
+    });
+
+    register(Pattern.class, new BSONEncoder<Pattern>() {
+      @Override
+      public byte encode(Buffer buffer, Pattern value) {
+        LE.appendCString(buffer, value.pattern());
+        // the flags are written one by one, in the order the decoder expects them
+        int flags = value.flags();
+        if ((flags & Pattern.CASE_INSENSITIVE) == Pattern.CASE_INSENSITIVE) {
+          LE.appendByte(buffer, (byte) 'i');
+        }
+        if ((flags & Pattern.MULTILINE) == Pattern.MULTILINE) {
+          LE.appendByte(buffer, (byte) 'm');
+        }
+        if ((flags & Pattern.DOTALL) == Pattern.DOTALL) {
+          LE.appendByte(buffer, (byte) 's');
+        }
+        if ((flags & Pattern.UNICODE_CASE) == Pattern.UNICODE_CASE) {
+          LE.appendByte(buffer, (byte) 'u');
+        }
+        if ((flags & Pattern.COMMENTS) == Pattern.COMMENTS) {
+          LE.appendByte(buffer, (byte) 'x');
+        }
+        if ((flags & Pattern.UNICODE_CHARACTER_CLASS) == Pattern.UNICODE_CHARACTER_CLASS) {
+          LE.appendByte(buffer, (byte) 'l');
+        }
+        LE.appendByte(buffer, (byte) 0x00);
+        return REGEX;
+      }
+
+      @Override
+      public int size(Pattern value) {
+        // pattern CString + one char per flag + 0x00
+        return UTF8.length(value.pattern()) + 1 + Integer.bitCount(value.flags() & REGEX_FLAGS) + 1;
+      }
+    });
+
+    register(Key.class, new BSONEncoder<Key>() {
+      @Override
+      public byte encode(Buffer buffer, Key value) {
+        if (value == Key.MIN) {
+          return MINKEY;
+        } else if (value == Key.MAX) {
+          return MAXKEY;
+        } else {
+          throw new EncodeException("Don't know how to encodeObject: " + value);
+        }
+      }
+
+      @Override
+      public int size(Key value) {
+        return 0;
+      }
+    });
+  }
+}
@@ -0,0 +1,26 @@
+package com.jetdrone.vertx.codec.bson;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class for which a {@link io.vertx.core.eventbus.MessageCodec} is generated at compile time.
+ * <p>
+ * For a class {@code Point} the processor generates {@code PointBSONCodec} in the same package, it writes the fields
+ * straight into the buffer and decodes straight into a new instance, without reflection or intermediate
+ * {@link BSONDocument}:
+ * <pre>
+ * eb.registerDefaultCodec(Point.class, new PointBSONCodec());
+ * </pre>
+ * Every non static, non transient field is an element named after the field, fields inherited from superclasses come
+ * first. Private fields are accessed through their getter and setter, the class needs a non private no argument
+ * constructor. Fields of a type annotated with {@code BSONEntity} are encoded as embedded documents with its generated
+ * codec, arrays (other than {@code byte[]}) and {@code List} fields are read and written element by element with the
+ * same rules, other types are encoded as {@link BSONMessageCodec} would.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface BSONEntity {
+}
@@ -1,63 +1,127 @@
 package com.jetdrone.vertx.codec.bson;
 
+import com.jetdrone.vertx.codec.bson.impl.FieldNameCache;
 import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.MessageCodec;
 import io.vertx.core.json.DecodeException;
-import io.vertx.core.json.EncodeException;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.*;
 import java.util.regex.Pattern;
 
 public class BSONMessageCodec implements MessageCodec<BSONDocument, BSONDocument> {
 
-  private static final byte FLOAT = (byte) 0x01;
-  private static final byte STRING = (byte) 0x02;
-  private static final byte EMBEDDED_DOCUMENT = (byte) 0x03;
-  private static final byte ARRAY = (byte) 0x04;
-  private static final byte BINARY = (byte) 0x05;
-  private static final byte BINARY_BINARY = (byte) 0x00;
-  private static final byte BINARY_FUNCTION = (byte) 0x01;
+  /**
+   * Marks the end of a document or array, returned by {@link BSONReader#nextType()} once all elements were read.
+   */
+  public static final byte END_OF_DOCUMENT = (byte) 0x00;
+  public static final byte FLOAT = (byte) 0x01;
+  public static final byte STRING = (byte) 0x02;
+  public static final byte EMBEDDED_DOCUMENT = (byte) 0x03;
+  public static final byte ARRAY = (byte) 0x04;
+  public static final byte BINARY = (byte) 0x05;
+  public static final byte BINARY_BINARY = (byte) 0x00;
+  public static final byte BINARY_FUNCTION = (byte) 0x01;
   @Deprecated
-  private static final byte BINARY_BINARY_OLD = (byte) 0x02;
+  public static final byte BINARY_BINARY_OLD = (byte) 0x02;
   @Deprecated
-  private static final byte BINARY_UUID_OLD = (byte) 0x03;
-  private static final byte BINARY_UUID = (byte) 0x04;
-  private static final byte BINARY_MD5 = (byte) 0x05;
-  private static final byte BINARY_USERDEFINED = (byte) 0x80;
+  public static final byte BINARY_UUID_OLD = (byte) 0x03;
+  public static final byte BINARY_UUID = (byte) 0x04;
+  public static final byte BINARY_MD5 = (byte) 0x05;
+  public static final byte BINARY_USERDEFINED = (byte) 0x80;
   @Deprecated
-  private static final byte UNDEFINED = (byte) 0x06;
-  private static final byte OBJECT_ID = (byte) 0x07;
-  private static final byte BOOLEAN = (byte) 0x08;
-  private static final byte UTC_DATETIME = (byte) 0x09;
-  private static final byte NULL = (byte) 0x0A;
-  private static final byte REGEX = (byte) 0x0B;
+  public static final byte UNDEFINED = (byte) 0x06;
+  public static final byte OBJECT_ID = (byte) 0x07;
+  public static final byte BOOLEAN = (byte) 0x08;
+  public static final byte UTC_DATETIME = (byte) 0x09;
+  public static final byte NULL = (byte) 0x0A;
+  public static final byte REGEX = (byte) 0x0B;
   @Deprecated
-  private static final byte DBPOINTER = (byte) 0x0C;
-  private static final byte JSCODE = (byte) 0x0D;
+  public static final byte DBPOINTER = (byte) 0x0C;
+  public static final byte JSCODE = (byte) 0x0D;
   @Deprecated
-  private static final byte SYMBOL = (byte) 0x0E;
-  private static final byte JSCODE_WS = (byte) 0x0F;
-  private static final byte INT32 = (byte) 0x10;
-  private static final byte TIMESTAMP = (byte) 0x11;
-  private static final byte INT64 = (byte) 0x12;
-  private static final byte MINKEY = (byte) 0xFF;
-  private static final byte MAXKEY = (byte) 0x7F;
+  public static final byte SYMBOL = (byte) 0x0E;
+  public static final byte JSCODE_WS = (byte) 0x0F;
+  public static final byte INT32 = (byte) 0x10;
+  public static final byte TIMESTAMP = (byte) 0x11;
+  public static final byte INT64 = (byte) 0x12;
+  public static final byte DECIMAL128 = (byte) 0x13;
+  public static final byte MINKEY = (byte) 0xFF;
+  public static final byte MAXKEY = (byte) 0x7F;
+
+  // pre-encoded element names ("0\0", "1\0", ...) for array elements
+  private static final byte[][] INDEX_KEYS = new byte[1024][];
+
+  static {
+    for (int i = 0; i < INDEX_KEYS.length; i++) {
+      INDEX_KEYS[i] = (i + "\0").getBytes(StandardCharsets.US_ASCII);
+    }
+  }
+
+  private static final BSONCodecOptions DEFAULT_OPTIONS = new BSONCodecOptions();
+
+  private final BSONCodecOptions options;
+  private final Projection projection;
+  // null when disabled
+  private final BSONCodecMetrics metrics;
+
+  public BSONMessageCodec() {
+    this(new BSONCodecOptions());
+  }
+
+  public BSONMessageCodec(BSONCodecOptions options) {
+    this.options = new BSONCodecOptions(options);
+    this.projection = Projection.compile(options.getProjection());
+    this.metrics = options.isMetricsEnabled() ? new BSONCodecMetrics() : null;
+  }
+
+  /**
+   * @return the statistics of this codec, null unless enabled with {@link BSONCodecOptions#setMetricsEnabled(boolean)}
+   */
+  public BSONCodecMetrics getMetrics() {
+    return metrics;
+  }
 
   @Override
   public void encodeToWire(Buffer buffer, BSONDocument document) {
-    // allocate space for the document length
-    int base = buffer.length();
+    if (metrics == null) {
+      encodeDocument(buffer, document);
+    } else {
+      int pos = buffer.length();
+      long start = System.nanoTime();
+      encodeDocument(buffer, document);
+      metrics.encoded(buffer, pos, System.nanoTime() - start);
+    }
+  }
 
-    LE.appendInt(buffer, 0);
+  /**
+   * Encodes the document into a direct buffer from Netty's pooled allocator, see
+   * {@link #encodeToByteBuf(BSONDocument, ByteBufAllocator)}.
+   */
+  public ByteBuf encodeToByteBuf(BSONDocument document) {
+    return encodeToByteBuf(document, PooledByteBufAllocator.DEFAULT);
+  }
 
-    for (Map.Entry<String, ?> entry : document.entrySet()) {
-      encode(buffer, entry.getKey(), entry.getValue());
+  /**
+   * Encodes the document into a direct buffer of exactly the encoded size, so it can be written to a socket without
+   * the heap to direct memory copy. The caller owns the returned buffer and must release it, writing it to a Netty
+   * channel does that.
+   */
+  public ByteBuf encodeToByteBuf(BSONDocument document, ByteBufAllocator allocator) {
+    ByteBuf buf = allocator.directBuffer(encodedSize(document));
+    try {
+      // the wrapper writes straight into buf
+      encodeToWire(Buffer.buffer(buf), document);
+      return buf;
+    } catch (RuntimeException e) {
+      buf.release();
+      throw e;
     }
-
-    LE.setInt(buffer, base, buffer.length() + 1 - base);
-    LE.appendByte(buffer, (byte) 0x00);
   }
 
   @Override
@@ -66,12 +130,48 @@ public class BSONMessageCodec implements MessageCodec<BSONDocument, BSONDocument
       return null;
     }
 
-    return decodeDocument(buffer, i);
+    if (metrics == null) {
+      return decodeDocument(buffer, i, options, projection);
+    }
+    long start = System.nanoTime();
+    BSONDocument document = decodeDocument(buffer, i, options, projection);
+    metrics.decoded(buffer, i, System.nanoTime() - start);
+    return document;
+  }
+
+  /**
+   * Decodes only the given fields of the document, see {@link BSONCodecOptions#setProjection(Collection)}. The paths
+   * are compiled on every call, use {@link #decodeFromWire(int, Buffer, Projection)} on hot paths.
+   */
+  public BSONDocument decodeFromWire(int i, Buffer buffer, Collection<String> fields) {
+    return decodeFromWire(i, buffer, Projection.compile(fields));
   }
 
+  /**
+   * Decodes only the fields of the compiled projection, null decodes all fields.
+   */
+  public BSONDocument decodeFromWire(int i, Buffer buffer, Projection projection) {
+    if (buffer == null) {
+      return null;
+    }
+
+    if (metrics == null) {
+      return decodeDocument(buffer, i, options, projection);
+    }
+    long start = System.nanoTime();
+    BSONDocument document = decodeDocument(buffer, i, options, projection);
+    metrics.decoded(buffer, i, System.nanoTime() - start);
+    return document;
+  }
+
+  /**
+   * Local consumers receive the sent document, or an immutable snapshot of it with
+   * {@link BSONCodecOptions#setImmutableDelivery(boolean)}. Snapshots of a mutable document are taken per consumer,
+   * publishing an {@link ImmutableBSONDocument} hands the same instance to every consumer.
+   */
   @Override
   public BSONDocument transform(BSONDocument document) {
-    return document;
+    return document == null || !options.isImmutableDelivery() ? document : document.snapshot();
   }
 
   @Override
@@ -84,161 +184,221 @@ public class BSONMessageCodec implements MessageCodec<BSONDocument, BSONDocument
     return -1;
   }
 
-  @SuppressWarnings("unchecked")
+  private void encodeDocument(Buffer buffer, BSONDocument document) {
+    if (options.isPresize()) {
+      // grow the destination once, the encoder then never triggers a reallocation
+      buffer.getByteBuf().ensureWritable(encodedSize(document));
+    }
+    encode(buffer, document);
+  }
+
+  /**
+   * Writes one element, the type byte is only known once the value is encoded so it is patched afterwards.
+   */
   private static void encode(Buffer buffer, String key, Object value) {
+    int typePos = buffer.length();
+    LE.appendByte(buffer, (byte) 0x00);
+    FieldNameCache.append(buffer, key);
+    LE.setByte(buffer, typePos, encodeValue(buffer, value));
+  }
+
+  /**
+   * Writes one element of an array, the index key is written from the pre-encoded table.
+   */
+  private static void encode(Buffer buffer, int index, Object value) {
+    int typePos = buffer.length();
+    LE.appendByte(buffer, (byte) 0x00);
+    appendIndexKey(buffer, index);
+    LE.setByte(buffer, typePos, encodeValue(buffer, value));
+  }
+
+  /**
+   * Registers the encoder of a Java type, it is used for instances of the type and of its subtypes unless a more
+   * specific encoder is registered. Built-in types can be overridden the same way.
+   */
+  public static <T> void registerEncoder(Class<T> type, BSONEncoder<? super T> encoder) {
+    BSONEncoders.register(type, encoder);
+  }
+
+  /**
+   * Appends the value (without type and key) and returns its BSON type, the caller writes the type and key of the
+   * element before the value.
+   */
+  public static byte encodeValue(Buffer buffer, Object value) {
     if (value == null) {
-      LE.appendByte(buffer, NULL);
-      LE.appendCString(buffer, key);
-    } else if (value instanceof Double) {
-      LE.appendByte(buffer, FLOAT);
-      LE.appendCString(buffer, key);
-      LE.appendDouble(buffer, (Double) value);
-    } else if (value instanceof String) {
-      LE.appendByte(buffer, STRING);
-      LE.appendCString(buffer, key);
-      LE.appendString(buffer, (String) value);
-    } else if (value instanceof Map) {
-      LE.appendByte(buffer, EMBEDDED_DOCUMENT);
-      LE.appendCString(buffer, key);
-      buffer.appendBuffer(encode((Map<String, ?>) value));
-    } else if (value instanceof List) {
-      LE.appendByte(buffer, ARRAY);
-      LE.appendCString(buffer, key);
-      buffer.appendBuffer(encode((List<?>) value));
-    } else if (value instanceof UUID) {
-      LE.appendByte(buffer, BINARY);
-      LE.appendCString(buffer, key);
-      // append length
-      LE.appendInt(buffer, 16);
-      LE.appendByte(buffer, BINARY_UUID);
-      // append data
-      UUID uuid = (UUID) value;
-      buffer.appendLong(uuid.getMostSignificantBits());
-      buffer.appendLong(uuid.getLeastSignificantBits());
-    } else if (value instanceof byte[]) {
-      LE.appendByte(buffer, BINARY);
-      LE.appendCString(buffer, key);
-      // append length
-      byte[] data = (byte[]) value;
-      LE.appendInt(buffer, data.length);
-      LE.appendByte(buffer, BINARY_BINARY);
-      // append data
-      LE.appendBytes(buffer, data);
-    } else if (value instanceof Buffer) {
-      LE.appendByte(buffer, BINARY);
-      LE.appendCString(buffer, key);
-      // append length
-      LE.appendInt(buffer, ((Buffer) value).length());
-      LE.appendByte(buffer, BINARY_USERDEFINED);
-      // append data
-      buffer.appendBuffer((Buffer) value);
-    } else if (value instanceof MD5) {
-      LE.appendByte(buffer, BINARY);
-      LE.appendCString(buffer, key);
-      // append length
-      byte[] data = ((MD5) value).getHash();
-      LE.appendInt(buffer, data.length);
-      LE.appendByte(buffer, BINARY_MD5);
-      // append data
-      LE.appendBytes(buffer, data);
-    } else if (value instanceof ObjectId) {
-      LE.appendByte(buffer, OBJECT_ID);
-      LE.appendCString(buffer, key);
-      LE.appendBytes(buffer, ((ObjectId) value).getBytes());
-    } else if (value instanceof Boolean) {
-      LE.appendByte(buffer, BOOLEAN);
-      LE.appendCString(buffer, key);
-      LE.appendBoolean(buffer, (Boolean) value);
-    } else if (value instanceof Date) {
-      if (value instanceof Timestamp) {
-        LE.appendByte(buffer, TIMESTAMP);
-        LE.appendCString(buffer, key);
-        LE.appendLong(buffer, ((Date) value).getTime());
-      } else {
-        LE.appendByte(buffer, UTC_DATETIME);
-        LE.appendCString(buffer, key);
-        LE.appendLong(buffer, ((Date) value).getTime());
-      }
-    } else if (value instanceof Pattern) {
-      LE.appendByte(buffer, REGEX);
-      LE.appendCString(buffer, key);
-      Pattern pattern = (Pattern) value;
-      LE.appendCString(buffer, pattern.pattern());
-      int iFlags = pattern.flags();
-      StringBuilder flags = new StringBuilder();
-      if ((iFlags & Pattern.CASE_INSENSITIVE) == Pattern.CASE_INSENSITIVE) {
-        flags.append('i');
-      }
-      if ((iFlags & Pattern.MULTILINE) == Pattern.MULTILINE) {
-        flags.append('m');
-      }
-      if ((iFlags & Pattern.DOTALL) == Pattern.DOTALL) {
-        flags.append('s');
-      }
-      if ((iFlags & Pattern.UNICODE_CASE) == Pattern.UNICODE_CASE) {
-        flags.append('u');
-      }
-      if ((iFlags & Pattern.COMMENTS) == Pattern.COMMENTS) {
-        flags.append('x');
-      }
-      if ((iFlags & Pattern.UNICODE_CHARACTER_CLASS) == Pattern.UNICODE_CHARACTER_CLASS) {
-        flags.append('l');
-      }
-      LE.appendCString(buffer, flags.toString());
-    } else if (value instanceof Integer) {
-      LE.appendByte(buffer, INT32);
-      LE.appendCString(buffer, key);
-      LE.appendInt(buffer, (Integer) value);
-    } else if (value instanceof Long) {
-      LE.appendByte(buffer, INT64);
-      LE.appendCString(buffer, key);
-      LE.appendLong(buffer, (Long) value);
-    } else if (value instanceof Key) {
-      if (value == Key.MIN) {
-        LE.appendByte(buffer, MINKEY);
-        LE.appendCString(buffer, key);
-      } else if (value == Key.MAX) {
-        LE.appendByte(buffer, MAXKEY);
-        LE.appendCString(buffer, key);
-      } else {
-        throw new EncodeException("Don't know how to encodeObject: " + value);
-      }
+      return NULL;
+    }
+    return BSONEncoders.lookup(value.getClass()).encode(buffer, value);
+  }
+
+  /**
+   * Appends the name of the array element at index, the digits followed by 0x00.
+   */
+  public static void appendIndexKey(Buffer buffer, int index) {
+    if (index < INDEX_KEYS.length) {
+      LE.appendBytes(buffer, INDEX_KEYS[index]);
     } else {
-      // TODO: JSON.js does not throw exception but ignores the value, should we do the same?
-      throw new EncodeException("Don't know how to encode: " + value.getClass().getName());
+      // grow the buffer once and set the digits in place, last digit first
+      int pos = buffer.length();
+      int end = pos + digits(index);
+      LE.setByte(buffer, end, (byte) 0x00);
+      for (int i = end - 1; i >= pos; i--) {
+        LE.setByte(buffer, i, (byte) ('0' + index % 10));
+        index /= 10;
+      }
     }
   }
 
-  private static Buffer encode(Map<String, ?> jsObject) {
-    Buffer buffer = Buffer.buffer();
+  private static int indexKeySize(int index) {
+    if (index < INDEX_KEYS.length) {
+      return INDEX_KEYS[index].length;
+    }
+    // digits + 0x00
+    return digits(index) + 1;
+  }
+
+  private static int digits(int index) {
+    int digits = 1;
+    while (index >= 10) {
+      index /= 10;
+      digits++;
+    }
+    return digits;
+  }
+
+  /**
+   * Computes the exact number of bytes {@link #encodeToWire(Buffer, BSONDocument)} will write for the document.
+   */
+  public static int encodedSize(BSONDocument document) {
+    return sizeOf(document);
+  }
+
+  static int sizeOf(Map<String, ?> jsObject) {
+    // length + elements + 0x00
+    int size = 5;
+    for (Map.Entry<String, ?> entry : jsObject.entrySet()) {
+      // type + key + value
+      size += 1 + FieldNameCache.length(entry.getKey()) + sizeOf(entry.getValue());
+    }
+    return size;
+  }
+
+  static int sizeOf(List<?> list) {
+    // length + elements + 0x00
+    int size = 5;
+    int i = 0;
+    for (Object value : list) {
+      // type + key + value
+      size += 1 + indexKeySize(i++) + sizeOf(value);
+    }
+    return size;
+  }
+
+  static int sizeOf(int length, int valueSize) {
+    // length + elements + 0x00
+    int size = 5;
+    for (int i = 0; i < length; i++) {
+      // type + key + value
+      size += 1 + indexKeySize(i) + valueSize;
+    }
+    return size;
+  }
+
+  /**
+   * Size of a value without its type and key.
+   */
+  static int sizeOf(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    return BSONEncoders.lookup(value.getClass()).size(value);
+  }
+
+  /**
+   * Encodes the document in place, the length slot is reserved up front and patched once the elements are written so
+   * embedded documents never need an intermediate buffer.
+   */
+  static void encode(Buffer buffer, Map<String, ?> jsObject) {
     // allocate space for the document length
+    int base = buffer.length();
     LE.appendInt(buffer, 0);
 
     for (Map.Entry<String, ?> entry : jsObject.entrySet()) {
       encode(buffer, entry.getKey(), entry.getValue());
     }
 
-    LE.setInt(buffer, 0, buffer.length() + 1);
+    LE.setInt(buffer, base, buffer.length() + 1 - base);
     LE.appendByte(buffer, (byte) 0x00);
-    return buffer;
   }
 
-  private static Buffer encode(List<?> list) {
-    Buffer buffer = Buffer.buffer();
+  static void encode(Buffer buffer, List<?> list) {
     // allocate space for the document length
+    int base = buffer.length();
     LE.appendInt(buffer, 0);
 
-    for (int i = 0; i < list.size(); i++) {
-      Object value = list.get(i);
-      encode(buffer, String.valueOf(i), value);
+    int i = 0;
+    for (Object value : list) {
+      encode(buffer, i++, value);
     }
 
-    LE.setInt(buffer, 0, buffer.length() + 1);
+    LE.setInt(buffer, base, buffer.length() + 1 - base);
     LE.appendByte(buffer, (byte) 0x00);
-    return buffer;
   }
 
-  private static BSONDocument decodeDocument(Buffer buffer, int pos) {
+  static void encode(Buffer buffer, int[] array) {
+    // allocate space for the document length
+    int base = buffer.length();
+    LE.appendInt(buffer, 0);
+
+    for (int i = 0; i < array.length; i++) {
+      LE.appendByte(buffer, INT32);
+      appendIndexKey(buffer, i);
+      LE.appendInt(buffer, array[i]);
+    }
+
+    LE.setInt(buffer, base, buffer.length() + 1 - base);
+    LE.appendByte(buffer, (byte) 0x00);
+  }
+
+  static void encode(Buffer buffer, long[] array) {
+    // allocate space for the document length
+    int base = buffer.length();
+    LE.appendInt(buffer, 0);
+
+    for (int i = 0; i < array.length; i++) {
+      LE.appendByte(buffer, INT64);
+      appendIndexKey(buffer, i);
+      LE.appendLong(buffer, array[i]);
+    }
+
+    LE.setInt(buffer, base, buffer.length() + 1 - base);
+    LE.appendByte(buffer, (byte) 0x00);
+  }
+
+  static void encode(Buffer buffer, double[] array) {
+    // allocate space for the document length
+    int base = buffer.length();
+    LE.appendInt(buffer, 0);
+
+    for (int i = 0; i < array.length; i++) {
+      LE.appendByte(buffer, FLOAT);
+      appendIndexKey(buffer, i);
+      LE.appendDouble(buffer, array[i]);
+    }
+
+    LE.setInt(buffer, base, buffer.length() + 1 - base);
+    LE.appendByte(buffer, (byte) 0x00);
+  }
+
+  static BSONDocument decodeDocument(Buffer buffer, int pos, BSONCodecOptions options) {
+    return decodeDocument(buffer, pos, options, null);
+  }
+
+  /**
+   * Decodes the document, when a projection is given only the selected fields are decoded, the values of the other
+   * fields are jumped over using their length.
+   */
+  static BSONDocument decodeDocument(Buffer buffer, int pos, BSONCodecOptions options, Projection projection) {
 
     // skip the last 0x00
     int length = pos + LE.getInt(buffer, pos) - 1;
@@ -250,305 +410,298 @@ public class BSONMessageCodec implements MessageCodec<BSONDocument, BSONDocument
       // get type
       byte type = LE.getByte(buffer, pos);
       pos++;
-      String key = LE.getCString(buffer, pos);
-      pos += key.length() + 1;
-
-      switch (type) {
-        case FLOAT:
-          document.put(key, LE.getDouble(buffer, pos));
-          pos += 8;
-          break;
-        case STRING:
-          int utfLength = LE.getInt(buffer, pos);
-          pos += 4;
-          document.put(key, LE.getString(buffer, pos, utfLength - 1));
-          pos += utfLength;
-          break;
-        case EMBEDDED_DOCUMENT:
-          int docLen = LE.getInt(buffer, pos);
-          document.put(key, decodeDocument(buffer, pos));
-          pos += docLen;
-          break;
-        case ARRAY:
-          int arrLen = LE.getInt(buffer, pos);
-          document.put(key, decodeList(buffer, pos));
-          pos += arrLen;
-          break;
-        case BINARY:
-          int binLen = LE.getInt(buffer, pos);
-          pos += 4;
-          byte bintype = LE.getByte(buffer, pos);
-          pos++;
-          switch (bintype) {
-            case BINARY_BINARY:
-              document.put(key, LE.getBytes(buffer, pos, binLen));
-              pos += binLen;
-              break;
-            case BINARY_FUNCTION:
-              throw new DecodeException("Not Implemented");
-            case BINARY_BINARY_OLD:
-              int oldBinLen = LE.getInt(buffer, pos);
-              pos += 4;
-              document.put(key, LE.getBytes(buffer, pos, oldBinLen));
-              pos += binLen;
-              break;
-            case BINARY_UUID_OLD:
-              throw new DecodeException("Not Implemented");
-            case BINARY_UUID:
-              long mostSignificantBits = buffer.getLong(pos);
-              pos += 8;
-              long leastSignificantBits = buffer.getLong(pos);
-              pos += 8;
-              document.put(key, new UUID(mostSignificantBits, leastSignificantBits));
-              break;
-            case BINARY_MD5:
-              final byte[] md5 = LE.getBytes(buffer, pos, binLen);
-              document.put(key, (MD5) () -> md5);
-              pos += binLen;
-              break;
-            case BINARY_USERDEFINED:
-              document.put(key, buffer.getBuffer(pos, pos + binLen));
-              pos += binLen;
-              break;
-          }
-          break;
-        case UNDEFINED:
-          // undefined has no meaning in Java, so treat it as a NO-OP
-          break;
-        case OBJECT_ID:
-          document.put(key, new ObjectId(LE.getBytes(buffer, pos, 12)));
-          pos += 12;
-          break;
-        case BOOLEAN:
-          document.put(key, LE.getBoolean(buffer, pos));
-          pos++;
-          break;
-        case UTC_DATETIME:
-          document.put(key, new Date(LE.getLong(buffer, pos)));
-          pos += 8;
-          break;
-        case NULL:
-          document.put(key, null);
-          break;
-        case REGEX:
-          String regex = LE.getCString(buffer, pos);
-          pos += regex.length() + 1;
-          String options = LE.getCString(buffer, pos);
-          pos += options.length() + 1;
-
-          int flags = 0;
-          for (int i = 0; i < options.length(); i++) {
-            if (options.charAt(i) == 'i') {
-              flags |= Pattern.CASE_INSENSITIVE;
-              continue;
-            }
-            if (options.charAt(i) == 'm') {
-              flags |= Pattern.MULTILINE;
-              continue;
-            }
-            if (options.charAt(i) == 's') {
-              flags |= Pattern.DOTALL;
-              continue;
-            }
-            if (options.charAt(i) == 'u') {
-              flags |= Pattern.UNICODE_CASE;
-              continue;
-            }
-            if (options.charAt(i) == 'x') {
-              flags |= Pattern.COMMENTS;
-              continue;
-            }
-            if (options.charAt(i) == 'l') {
-              flags |= Pattern.UNICODE_CHARACTER_CLASS;
-            }
+      int end = LE.skipCString(buffer, pos);
+      String key = FieldNameCache.decode(buffer, pos, end - pos - 1);
+      pos = end;
+
+      // undefined has no meaning in Java, so treat it as a NO-OP
+      if (type != UNDEFINED) {
+        if (projection == null) {
+          document.put(key, decodeValue(buffer, type, pos, options));
+        } else {
+          Projection field = projection.get(key);
+          if (field != null && (field == Projection.ALL || type == EMBEDDED_DOCUMENT || type == ARRAY)) {
+            document.put(key, decodeValue(buffer, type, pos, options, field));
           }
-          document.put(key, Pattern.compile(regex, flags));
-          break;
-        case DBPOINTER:
-        case JSCODE:
-        case SYMBOL:
-        case JSCODE_WS:
-          throw new DecodeException("Not Implemented");
-        case INT32:
-          document.put(key, LE.getInt(buffer, pos));
-          pos += 4;
-          break;
-        case TIMESTAMP:
-          document.put(key, new Timestamp(LE.getLong(buffer, pos)));
-          pos += 8;
-          break;
-        case INT64:
-          document.put(key, LE.getLong(buffer, pos));
-          pos += 8;
-          break;
-        case MINKEY:
-          document.put(key, Key.MIN);
-          break;
-        case MAXKEY:
-          document.put(key, Key.MAX);
-          break;
+        }
       }
+      pos += valueLength(buffer, type, pos);
     }
 
     return document;
   }
 
-  private static List<?> decodeList(Buffer buffer, int pos) {
+  /**
+   * Decodes an array selecting the projected fields of the documents it contains, other elements are skipped.
+   */
+  private static List<Object> decodeList(Buffer buffer, int pos, BSONCodecOptions options, Projection projection) {
     // skip the last 0x00
     int length = pos + LE.getInt(buffer, pos) - 1;
     pos += 4;
 
-    List<Object> list = new LinkedList<>();
+    List<Object> list = new ArrayList<>();
 
     while (pos < length) {
       // get type
       byte type = LE.getByte(buffer, pos);
-      pos++;
-      String key = LE.getCString(buffer, pos);
-      pos += key.length() + 1;
+      pos = LE.skipCString(buffer, pos + 1);
+
+      if (type == EMBEDDED_DOCUMENT || type == ARRAY) {
+        list.add(decodeValue(buffer, type, pos, options, projection));
+      }
+      pos += valueLength(buffer, type, pos);
+    }
+
+    return list;
+  }
 
+  private static Object decodeValue(Buffer buffer, byte type, int pos, BSONCodecOptions options, Projection projection) {
+    if (projection != Projection.ALL) {
       switch (type) {
-        case FLOAT:
-          list.add(Integer.parseInt(key), LE.getDouble(buffer, pos));
-          pos += 8;
-          break;
-        case STRING:
-          int utfLength = LE.getInt(buffer, pos);
-          pos += 4;
-          list.add(Integer.parseInt(key), LE.getString(buffer, pos, utfLength - 1));
-          pos += utfLength;
-          break;
         case EMBEDDED_DOCUMENT:
-          int docLen = LE.getInt(buffer, pos);
-          list.add(Integer.parseInt(key), decodeDocument(buffer, pos));
-          pos += docLen;
-          break;
+          return decodeDocument(buffer, pos, options, projection);
         case ARRAY:
-          int arrLen = LE.getInt(buffer, pos);
-          list.add(Integer.parseInt(key), decodeList(buffer, pos));
-          pos += arrLen;
-          break;
-        case BINARY:
-          int binLen = LE.getInt(buffer, pos);
-          pos += 4;
-          byte bintype = LE.getByte(buffer, pos);
-          pos++;
-          switch (bintype) {
-            case BINARY_BINARY:
-              list.add(Integer.parseInt(key), LE.getBytes(buffer, pos, binLen));
-              pos += binLen;
-              break;
-            case BINARY_FUNCTION:
-              throw new DecodeException("Not Implemented");
-            case BINARY_BINARY_OLD:
-              int oldBinLen = LE.getInt(buffer, pos);
+          return decodeList(buffer, pos, options, projection);
+      }
+    }
+    return decodeValue(buffer, type, pos, options);
+  }
+
+  static Object decodeList(Buffer buffer, int pos, BSONCodecOptions options) {
+    // skip the last 0x00
+    int length = pos + LE.getInt(buffer, pos) - 1;
+    pos += 4;
+
+    // elements are stored in index order, so the keys are never parsed, only skipped. A first pass counts the
+    // elements and checks if they all share the same type
+    int count = 0;
+    byte common = 0;
+    for (int p = pos; p < length; ) {
+      byte type = LE.getByte(buffer, p);
+      p = LE.skipCString(buffer, p + 1);
+      p += valueLength(buffer, type, p);
+
+      if (type != UNDEFINED) {
+        if (count == 0) {
+          common = type;
+        } else if (common != type) {
+          common = 0;
+        }
+        count++;
+      }
+    }
+
+    if (options.isPrimitiveArrays() && count > 0) {
+      // undefined elements are skipped, they have no value bytes
+      switch (common) {
+        case INT32:
+          int[] ints = new int[count];
+          for (int i = 0; i < count; ) {
+            byte type = LE.getByte(buffer, pos);
+            pos = LE.skipCString(buffer, pos + 1);
+            if (type != UNDEFINED) {
+              ints[i++] = LE.getInt(buffer, pos);
               pos += 4;
-              list.add(Integer.parseInt(key), LE.getBytes(buffer, pos, oldBinLen));
-              pos += binLen;
-              break;
-            case BINARY_UUID_OLD:
-              throw new DecodeException("Not Implemented");
-            case BINARY_UUID:
-              long mostSingnificantBits = buffer.getLong(pos);
-              pos += 8;
-              long leastSingnificantBits = buffer.getLong(pos);
-              pos += 8;
-              list.add(Integer.parseInt(key), new UUID(mostSingnificantBits, leastSingnificantBits));
-              break;
-            case BINARY_MD5:
-              final byte[] md5 = LE.getBytes(buffer, pos, binLen);
-              list.add(Integer.parseInt(key), new MD5() {
-                @Override
-                public byte[] getHash() {
-                  return md5;
-                }
-              });
-              pos += binLen;
-              break;
-            case BINARY_USERDEFINED:
-              list.add(Integer.parseInt(key), buffer.getBuffer(pos, pos + binLen));
-              pos += binLen;
-              break;
-          }
-          break;
-        case UNDEFINED:
-          // undefined has no meaning in Java, so treat it as a NO-OP
-          break;
-        case OBJECT_ID:
-          list.add(Integer.parseInt(key), new ObjectId(LE.getBytes(buffer, pos, 12)));
-          pos += 12;
-          break;
-        case BOOLEAN:
-          list.add(Integer.parseInt(key), LE.getBoolean(buffer, pos));
-          pos++;
-          break;
-        case UTC_DATETIME:
-          list.add(Integer.parseInt(key), new Date(LE.getLong(buffer, pos)));
-          pos += 8;
-          break;
-        case NULL:
-          list.add(Integer.parseInt(key), null);
-          break;
-        case REGEX:
-          String regex = LE.getCString(buffer, pos);
-          pos += regex.length() + 1;
-          String options = LE.getCString(buffer, pos);
-          pos += options.length() + 1;
-
-          int flags = 0;
-          for (int i = 0; i < options.length(); i++) {
-            if (options.charAt(i) == 'i') {
-              flags |= Pattern.CASE_INSENSITIVE;
-              continue;
-            }
-            if (options.charAt(i) == 'm') {
-              flags |= Pattern.MULTILINE;
-              continue;
             }
-            if (options.charAt(i) == 's') {
-              flags |= Pattern.DOTALL;
-              continue;
-            }
-            if (options.charAt(i) == 'u') {
-              flags |= Pattern.UNICODE_CASE;
-              continue;
-            }
-            if (options.charAt(i) == 'x') {
-              flags |= Pattern.COMMENTS;
-              continue;
+          }
+          return ints;
+        case INT64:
+          long[] longs = new long[count];
+          for (int i = 0; i < count; ) {
+            byte type = LE.getByte(buffer, pos);
+            pos = LE.skipCString(buffer, pos + 1);
+            if (type != UNDEFINED) {
+              longs[i++] = LE.getLong(buffer, pos);
+              pos += 8;
             }
-            if (options.charAt(i) == 'l') {
-              flags |= Pattern.UNICODE_CHARACTER_CLASS;
+          }
+          return longs;
+        case FLOAT:
+          double[] doubles = new double[count];
+          for (int i = 0; i < count; ) {
+            byte type = LE.getByte(buffer, pos);
+            pos = LE.skipCString(buffer, pos + 1);
+            if (type != UNDEFINED) {
+              doubles[i++] = LE.getDouble(buffer, pos);
+              pos += 8;
             }
           }
-          list.add(Integer.parseInt(key), Pattern.compile(regex, flags));
-          break;
-        case DBPOINTER:
-        case JSCODE:
-        case SYMBOL:
-        case JSCODE_WS:
-          throw new DecodeException("Not Implemented");
-        case INT32:
-          list.add(Integer.parseInt(key), LE.getInt(buffer, pos));
-          pos += 4;
-          break;
-        case TIMESTAMP:
-          list.add(Integer.parseInt(key), new Timestamp(LE.getLong(buffer, pos)));
-          pos += 8;
-          break;
-        case INT64:
-          list.add(Integer.parseInt(key), LE.getLong(buffer, pos));
-          pos += 8;
-          break;
-        case MINKEY:
-          list.add(Integer.parseInt(key), Key.MIN);
-          break;
-        case MAXKEY:
-          list.add(Integer.parseInt(key), Key.MAX);
-          break;
+          return doubles;
+      }
+    }
+
+    List<Object> list = new ArrayList<>(count);
+
+    while (pos < length) {
+      // get type
+      byte type = LE.getByte(buffer, pos);
+      pos = LE.skipCString(buffer, pos + 1);
+
+      // undefined has no meaning in Java, so treat it as a NO-OP
+      if (type != UNDEFINED) {
+        list.add(decodeValue(buffer, type, pos, options));
       }
+      pos += valueLength(buffer, type, pos);
     }
 
     return list;
   }
+
+  /**
+   * Decodes the value of the given type that starts at pos (right after the element name).
+   */
+  static Object decodeValue(Buffer buffer, byte type, int pos) {
+    return decodeValue(buffer, type, pos, DEFAULT_OPTIONS);
+  }
+
+  static Object decodeValue(Buffer buffer, byte type, int pos, BSONCodecOptions options) {
+    switch (type) {
+      case FLOAT:
+        return LE.getDouble(buffer, pos);
+      case STRING:
+        int utfLength = LE.getInt(buffer, pos);
+        return LE.getString(buffer, pos + 4, utfLength - 1);
+      case EMBEDDED_DOCUMENT:
+        return decodeDocument(buffer, pos, options);
+      case ARRAY:
+        return decodeList(buffer, pos, options);
+      case BINARY:
+        int binLen = LE.getInt(buffer, pos);
+        pos += 4;
+        byte bintype = LE.getByte(buffer, pos);
+        pos++;
+        switch (bintype) {
+          case BINARY_BINARY:
+            return LE.getBytes(buffer, pos, binLen);
+          case BINARY_BINARY_OLD:
+            int oldBinLen = LE.getInt(buffer, pos);
+            return LE.getBytes(buffer, pos + 4, oldBinLen);
+          case BINARY_UUID:
+            long mostSignificantBits = buffer.getLong(pos);
+            long leastSignificantBits = buffer.getLong(pos + 8);
+            return new UUID(mostSignificantBits, leastSignificantBits);
+          case BINARY_MD5:
+            final byte[] md5 = LE.getBytes(buffer, pos, binLen);
+            return (MD5) () -> md5;
+          case BINARY_USERDEFINED:
+            return buffer.getBuffer(pos, pos + binLen);
+          case BINARY_FUNCTION:
+          case BINARY_UUID_OLD:
+          default:
+            throw new DecodeException("Not Implemented");
+        }
+      case UNDEFINED:
+        // undefined has no meaning in Java
+        return null;
+      case OBJECT_ID:
+        return new ObjectId(buffer, pos);
+      case BOOLEAN:
+        return LE.getBoolean(buffer, pos);
+      case UTC_DATETIME:
+        return new Date(LE.getLong(buffer, pos));
+      case NULL:
+        return null;
+      case REGEX:
+        String regex = LE.getCString(buffer, pos);
+        String regexOptions = LE.getCString(buffer, LE.skipCString(buffer, pos));
+
+        int flags = 0;
+        for (int i = 0; i < regexOptions.length(); i++) {
+          if (regexOptions.charAt(i) == 'i') {
+            flags |= Pattern.CASE_INSENSITIVE;
+            continue;
+          }
+          if (regexOptions.charAt(i) == 'm') {
+            flags |= Pattern.MULTILINE;
+            continue;
+          }
+          if (regexOptions.charAt(i) == 's') {
+            flags |= Pattern.DOTALL;
+            continue;
+          }
+          if (regexOptions.charAt(i) == 'u') {
+            flags |= Pattern.UNICODE_CASE;
+            continue;
+          }
+          if (regexOptions.charAt(i) == 'x') {
+            flags |= Pattern.COMMENTS;
+            continue;
+          }
+          if (regexOptions.charAt(i) == 'l') {
+            flags |= Pattern.UNICODE_CHARACTER_CLASS;
+          }
+        }
+        return Pattern.compile(regex, flags);
+      case INT32:
+        return LE.getInt(buffer, pos);
+      case TIMESTAMP:
+        return new Timestamp(LE.getLong(buffer, pos));
+      case INT64:
+        return LE.getLong(buffer, pos);
+      case DECIMAL128:
+        Decimal128 decimal = new Decimal128(buffer, pos);
+        if (options.isDecimalsAsBigDecimal()) {
+          try {
+            return decimal.bigDecimalValue();
+          } catch (ArithmeticException e) {
+            throw new DecodeException(e.getMessage());
+          }
+        }
+        return decimal;
+      case MINKEY:
+        return Key.MIN;
+      case MAXKEY:
+        return Key.MAX;
+      case DBPOINTER:
+      case JSCODE:
+      case SYMBOL:
+      case JSCODE_WS:
+        throw new DecodeException("Not Implemented");
+      default:
+        throw new DecodeException("Unknown BSON type: " + type);
+    }
+  }
+
+  /**
+   * Computes the number of bytes used by the value of the given type that starts at pos, without decoding it.
+   */
+  static int valueLength(Buffer buffer, byte type, int pos) {
+    switch (type) {
+      case FLOAT:
+      case UTC_DATETIME:
+      case TIMESTAMP:
+      case INT64:
+        return 8;
+      case DECIMAL128:
+        return 16;
+      case STRING:
+      case JSCODE:
+      case SYMBOL:
+        return 4 + LE.getInt(buffer, pos);
+      case EMBEDDED_DOCUMENT:
+      case ARRAY:
+      case JSCODE_WS:
+        return LE.getInt(buffer, pos);
+      case BINARY:
+        // length + subtype + data
+        return 5 + LE.getInt(buffer, pos);
+      case UNDEFINED:
+      case NULL:
+      case MINKEY:
+      case MAXKEY:
+        return 0;
+      case OBJECT_ID:
+        return 12;
+      case BOOLEAN:
+        return 1;
+      case REGEX:
+        return LE.skipCString(buffer, LE.skipCString(buffer, pos)) - pos;
+      case DBPOINTER:
+        return 4 + LE.getInt(buffer, pos) + 12;
+      case INT32:
+        return 4;
+      default:
+        throw new DecodeException("Unknown BSON type: " + type);
+    }
+  }
 }
@@ -0,0 +1,257 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * Parses a stream of concatenated BSON documents (e.g. a socket or a mongodump file) framing each document by its
+ * length prefix, chunk boundaries can fall anywhere.
+ * <p>
+ * Documents that are complete inside a received chunk are decoded in place, only the incomplete tail is kept and
+ * copied when the next chunk arrives. When created with {@link #newParser(ReadStream)} the parser is the handler of
+ * the source and {@link #pause()}/{@link #resume()} are propagated to it, so a slow consumer applies backpressure to
+ * the source:
+ * <pre>
+ * BSONParser parser = BSONParser.newParser(socket);
+ * parser.handler(document -&gt; ...);
+ * </pre>
+ * It can also be used as a plain {@code Handler<Buffer>}, in which case chunks received while paused are buffered.
+ * <p>
+ * After a document fails to decode the position in the stream is lost, so the error goes to the exception handler and
+ * further input is ignored until {@link #reset()}. Length prefixes above {@link #setMaxDocumentLength(int)} fail
+ * right away instead of buffering up to the announced length.
+ */
+public class BSONParser implements Handler<Buffer>, ReadStream<BSONDocument> {
+
+  /**
+   * The largest document MongoDB accepts, 16MB.
+   */
+  public static final int DEFAULT_MAX_DOCUMENT_LENGTH = 16 * 1024 * 1024;
+
+  private final BSONMessageCodec codec;
+  private final ReadStream<Buffer> source;
+
+  private Handler<BSONDocument> handler;
+  private Handler<Void> endHandler;
+  private Handler<Throwable> exceptionHandler;
+
+  // unprocessed data, owned is false while it still is the chunk received from the source
+  private Buffer pending;
+  private int pos;
+  private boolean owned;
+
+  private int maxDocumentLength = DEFAULT_MAX_DOCUMENT_LENGTH;
+
+  private boolean paused;
+  private boolean emitting;
+  private boolean ended;
+  private boolean failed;
+
+  /**
+   * Creates a parser fed by a source stream, the parser becomes the handler of the source.
+   */
+  public static BSONParser newParser(ReadStream<Buffer> source) {
+    return newParser(source, new BSONMessageCodec());
+  }
+
+  public static BSONParser newParser(ReadStream<Buffer> source, BSONMessageCodec codec) {
+    BSONParser parser = new BSONParser(codec, source);
+    source.handler(parser);
+    source.endHandler(v -> parser.end());
+    source.exceptionHandler(parser::fail);
+    return parser;
+  }
+
+  public BSONParser() {
+    this(new BSONMessageCodec());
+  }
+
+  public BSONParser(BSONMessageCodec codec) {
+    this(codec, null);
+  }
+
+  private BSONParser(BSONMessageCodec codec, ReadStream<Buffer> source) {
+    this.codec = codec;
+    this.source = source;
+  }
+
+  @Override
+  public void handle(Buffer chunk) {
+    if (failed) {
+      return;
+    }
+
+    int remaining = remaining();
+
+    if (remaining == 0) {
+      // nothing left over, work on the chunk itself
+      pending = chunk;
+      pos = 0;
+      owned = false;
+    } else if (owned && pos == 0) {
+      pending.appendBuffer(chunk);
+    } else {
+      // copy the left over tail once, later chunks are appended to it
+      Buffer buffer = Buffer.buffer(remaining + chunk.length());
+      buffer.appendBuffer(pending, pos, remaining);
+      buffer.appendBuffer(chunk);
+      pending = buffer;
+      pos = 0;
+      owned = true;
+    }
+
+    emit();
+  }
+
+  /**
+   * Signals the end of the input, the end handler is called once all complete documents were delivered.
+   */
+  public void end() {
+    if (failed) {
+      return;
+    }
+    ended = true;
+    emit();
+  }
+
+  /**
+   * Drops any buffered data and accepts input again after a failure, the next chunk must start with a document.
+   */
+  public BSONParser reset() {
+    pending = null;
+    pos = 0;
+    owned = false;
+    ended = false;
+    failed = false;
+    return this;
+  }
+
+  public int getMaxDocumentLength() {
+    return maxDocumentLength;
+  }
+
+  /**
+   * Sets the largest accepted length prefix, defaults to {@link #DEFAULT_MAX_DOCUMENT_LENGTH}.
+   */
+  public BSONParser setMaxDocumentLength(int maxDocumentLength) {
+    if (maxDocumentLength < 5) {
+      throw new IllegalArgumentException("Invalid maximum document length: " + maxDocumentLength);
+    }
+    this.maxDocumentLength = maxDocumentLength;
+    return this;
+  }
+
+  @Override
+  public BSONParser exceptionHandler(Handler<Throwable> handler) {
+    exceptionHandler = handler;
+    return this;
+  }
+
+  @Override
+  public BSONParser handler(Handler<BSONDocument> handler) {
+    this.handler = handler;
+    if (handler != null) {
+      emit();
+    }
+    return this;
+  }
+
+  @Override
+  public BSONParser pause() {
+    if (!paused) {
+      paused = true;
+      if (source != null) {
+        source.pause();
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public BSONParser resume() {
+    if (paused) {
+      paused = false;
+      emit();
+      if (source != null && !paused) {
+        source.resume();
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public BSONParser endHandler(Handler<Void> handler) {
+    endHandler = handler;
+    return this;
+  }
+
+  private int remaining() {
+    return pending == null ? 0 : pending.length() - pos;
+  }
+
+  private void emit() {
+    if (emitting) {
+      // called from a handler, the outer loop continues
+      return;
+    }
+
+    emitting = true;
+    try {
+      while (!paused && handler != null && remaining() >= 4) {
+        int length = LE.getInt(pending, pos);
+        if (length < 5) {
+          fail(new DecodeException("Invalid BSON document length: " + length));
+          return;
+        }
+        if (length > maxDocumentLength) {
+          fail(new DecodeException("BSON document length " + length + " exceeds the maximum of " + maxDocumentLength));
+          return;
+        }
+        if (remaining() < length) {
+          break;
+        }
+
+        BSONDocument document;
+        try {
+          document = codec.decodeFromWire(pos, pending);
+        } catch (RuntimeException e) {
+          fail(e instanceof DecodeException ? e : new DecodeException("Invalid BSON document: " + e));
+          return;
+        }
+        pos += length;
+        handler.handle(document);
+      }
+
+      if (remaining() == 0) {
+        // release the last chunk
+        pending = null;
+      }
+
+      if (ended && !paused && handler != null) {
+        ended = false;
+        if (pending != null) {
+          fail(new DecodeException("Truncated BSON document at end of stream"));
+        } else if (endHandler != null) {
+          endHandler.handle(null);
+        }
+      }
+    } finally {
+      emitting = false;
+    }
+  }
+
+  private void fail(Throwable t) {
+    failed = true;
+    pending = null;
+    if (exceptionHandler != null) {
+      exceptionHandler.handle(t);
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else {
+      throw new DecodeException(t.getMessage());
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.FieldNameCache;
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.buffer.Buffer;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.*;
+
+/**
+ * Dotted path (e.g. {@code "meta.tenant.id"}) evaluated directly against an encoded BSON document.
+ * <p>
+ * The document is scanned comparing the encoded element names in place and the elements that are not on the path are
+ * skipped by their length, nothing else is decoded. Array elements are addressed by index, e.g. {@code "items.0.sku"}.
+ * Embedded documents and arrays are returned as views over the same bytes, so they can be forwarded as new messages
+ * without being decoded or encoded again:
+ * <pre>
+ * RawBSONDocument tenant = (RawBSONDocument) BSONPath.get(buffer, "meta.tenant");
+ * eb.send("tenant", tenant, new DeliveryOptions().setCodecName("RawBSON"));
+ * </pre>
+ * A compiled path is immutable and can be shared, routers evaluating the same path on every message should compile it
+ * once.
+ */
+public final class BSONPath {
+
+  private final String path;
+  // NUL terminated names of each step
+  private final byte[][] names;
+
+  private BSONPath(String path) {
+    this.path = path;
+    String[] steps = path.split("\\.", -1);
+    names = new byte[steps.length][];
+    for (int i = 0; i < steps.length; i++) {
+      names[i] = FieldNameCache.encode(steps[i]);
+    }
+  }
+
+  public static BSONPath compile(String path) {
+    return new BSONPath(path);
+  }
+
+  /**
+   * Evaluates the path against the document at the start of the buffer, see {@link #get(Buffer, int)}.
+   */
+  public static Object get(Buffer buffer, String path) {
+    return compile(path).get(buffer, 0);
+  }
+
+  /**
+   * Slices the embedded document or array at the path of the document at the start of the buffer, see
+   * {@link #slice(Buffer, int)}.
+   */
+  public static Buffer slice(Buffer buffer, String path) {
+    return compile(path).slice(buffer, 0);
+  }
+
+  /**
+   * @return the value at the path, embedded documents and arrays are returned as {@link RawBSONDocument} and
+   * {@link RawBSONList} views, null when the path does not exist
+   */
+  public Object get(Buffer buffer, int pos) {
+    int field = find(buffer, pos);
+    return field == -1 ? null : RawBSONDocument.decodeField(buffer, field);
+  }
+
+  /**
+   * @return the type of the element at the path or {@link BSONMessageCodec#END_OF_DOCUMENT} when it does not exist
+   */
+  public byte type(Buffer buffer, int pos) {
+    int field = find(buffer, pos);
+    return field == -1 ? END_OF_DOCUMENT : LE.getByte(buffer, field);
+  }
+
+  /**
+   * @return the bytes of the embedded document or array at the path as a slice of the buffer, null when the path does
+   * not exist or is not a document or array
+   */
+  public Buffer slice(Buffer buffer, int pos) {
+    int field = find(buffer, pos);
+    if (field == -1) {
+      return null;
+    }
+    byte type = LE.getByte(buffer, field);
+    if (type != EMBEDDED_DOCUMENT && type != ARRAY) {
+      return null;
+    }
+    int valuePos = LE.skipCString(buffer, field + 1);
+    return buffer.slice(valuePos, valuePos + LE.getInt(buffer, valuePos));
+  }
+
+  /**
+   * @param pos position of the document in the buffer
+   * @return the position of the type byte of the element at the path or -1 when it does not exist
+   */
+  public int find(Buffer buffer, int pos) {
+    int field = -1;
+    for (int i = 0; i < names.length; i++) {
+      if (i > 0) {
+        byte type = LE.getByte(buffer, field);
+        if (type != EMBEDDED_DOCUMENT && type != ARRAY) {
+          return -1;
+        }
+        pos = LE.skipCString(buffer, field + 1);
+      }
+      field = find(buffer, pos, names[i]);
+      if (field == -1) {
+        return -1;
+      }
+    }
+    return field;
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+
+  @SuppressWarnings("deprecation")
+  private static int find(Buffer buffer, int pos, byte[] name) {
+    // skip the last 0x00
+    int end = pos + LE.getInt(buffer, pos) - 1;
+    pos += 4;
+
+    while (pos < end) {
+      if (LE.getByte(buffer, pos) != UNDEFINED && matches(buffer, pos + 1, end, name)) {
+        return pos;
+      }
+      pos = RawBSONDocument.skipField(buffer, pos);
+    }
+    return -1;
+  }
+
+  private static boolean matches(Buffer buffer, int pos, int end, byte[] name) {
+    if (pos + name.length > end) {
+      return false;
+    }
+    // the name includes the terminating 0x00
+    for (int i = 0; i < name.length; i++) {
+      if (buffer.getByte(pos + i) != name[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
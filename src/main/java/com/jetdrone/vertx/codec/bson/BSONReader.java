@@ -0,0 +1,318 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.FieldNameCache;
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+
+import java.util.Arrays;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.*;
+
+/**
+ * Pull parser over an encoded BSON document.
+ * <p>
+ * Values are read straight from the buffer so consumers can fill their own objects without any intermediate map:
+ * <pre>
+ * BSONReader reader = new BSONReader(buffer);
+ * reader.startDocument();
+ * while (reader.nextType() != BSONMessageCodec.END_OF_DOCUMENT) {
+ *   switch (reader.readName()) {
+ *     case "id":
+ *       id = reader.readInt32();
+ *       break;
+ *     default:
+ *       reader.skipValue();
+ *   }
+ * }
+ * reader.endDocument();
+ * </pre>
+ * The type of each element is one of the type constants of {@link BSONMessageCodec}. Reading a value without reading
+ * the name first skips the name. A reader is not thread safe.
+ */
+public class BSONReader {
+
+  private enum State {
+    TYPE, NAME, VALUE, END
+  }
+
+  private final Buffer buffer;
+  private int pos;
+  private State state;
+  private byte type = EMBEDDED_DOCUMENT;
+
+  // position of the terminating 0x00 of each open document
+  private int[] ends = new int[8];
+  private int depth;
+
+  public BSONReader(Buffer buffer) {
+    this(buffer, 0);
+  }
+
+  /**
+   * @param pos position of the document in the buffer
+   */
+  public BSONReader(Buffer buffer, int pos) {
+    this.buffer = buffer;
+    this.pos = pos;
+    // the top level document is read as if it was a value
+    this.state = State.VALUE;
+  }
+
+  /**
+   * @return the current position in the buffer
+   */
+  public int position() {
+    return pos;
+  }
+
+  /**
+   * @return the depth of the current document, 0 before the top level document is started
+   */
+  public int depth() {
+    return depth;
+  }
+
+  /**
+   * Reads the type of the next element.
+   *
+   * @return the element type or {@link BSONMessageCodec#END_OF_DOCUMENT} when the current document has no more elements
+   */
+  public byte nextType() {
+    if (depth == 0) {
+      throw new IllegalStateException("No document started");
+    }
+    if (state == State.NAME || state == State.VALUE) {
+      skipValue();
+    }
+    if (state == State.END) {
+      return END_OF_DOCUMENT;
+    }
+
+    if (pos == ends[depth - 1]) {
+      state = State.END;
+      type = END_OF_DOCUMENT;
+    } else {
+      type = LE.getByte(buffer, pos);
+      pos++;
+      state = State.NAME;
+    }
+    return type;
+  }
+
+  /**
+   * @return the type returned by the last call to {@link #nextType()}
+   */
+  public byte currentType() {
+    return type;
+  }
+
+  /**
+   * Reads the name of the current element.
+   */
+  public String readName() {
+    checkState(State.NAME);
+    int end = LE.skipCString(buffer, pos);
+    String name = FieldNameCache.decode(buffer, pos, end - pos - 1);
+    pos = end;
+    state = State.VALUE;
+    return name;
+  }
+
+  /**
+   * Skips the name of the current element.
+   */
+  public void skipName() {
+    checkState(State.NAME);
+    pos = LE.skipCString(buffer, pos);
+    state = State.VALUE;
+  }
+
+  /**
+   * Skips the value of the current element without decoding it, the whole subtree for documents and arrays.
+   */
+  public void skipValue() {
+    value(type);
+    pos += valueLength(buffer, type, pos);
+    state = State.TYPE;
+  }
+
+  /**
+   * Starts reading the current embedded document (or the top level document).
+   */
+  public void startDocument() {
+    start(EMBEDDED_DOCUMENT);
+  }
+
+  /**
+   * Skips the remaining elements of the current document and moves to the element after it.
+   */
+  public void endDocument() {
+    end();
+  }
+
+  /**
+   * Starts reading the current array, the element names are the array indexes.
+   */
+  public void startArray() {
+    start(ARRAY);
+  }
+
+  /**
+   * Skips the remaining elements of the current array and moves to the element after it.
+   */
+  public void endArray() {
+    end();
+  }
+
+  public double readDouble() {
+    value(FLOAT);
+    double value = LE.getDouble(buffer, pos);
+    pos += 8;
+    state = State.TYPE;
+    return value;
+  }
+
+  public String readString() {
+    value(STRING);
+    int utfLength = LE.getInt(buffer, pos);
+    String value = LE.getString(buffer, pos + 4, utfLength - 1);
+    pos += 4 + utfLength;
+    state = State.TYPE;
+    return value;
+  }
+
+  public int readInt32() {
+    value(INT32);
+    int value = LE.getInt(buffer, pos);
+    pos += 4;
+    state = State.TYPE;
+    return value;
+  }
+
+  public long readInt64() {
+    value(INT64);
+    long value = LE.getLong(buffer, pos);
+    pos += 8;
+    state = State.TYPE;
+    return value;
+  }
+
+  public boolean readBoolean() {
+    value(BOOLEAN);
+    boolean value = LE.getBoolean(buffer, pos);
+    pos++;
+    state = State.TYPE;
+    return value;
+  }
+
+  /**
+   * @return milliseconds since the epoch
+   */
+  public long readDateTime() {
+    value(UTC_DATETIME);
+    long value = LE.getLong(buffer, pos);
+    pos += 8;
+    state = State.TYPE;
+    return value;
+  }
+
+  public long readTimestamp() {
+    value(TIMESTAMP);
+    long value = LE.getLong(buffer, pos);
+    pos += 8;
+    state = State.TYPE;
+    return value;
+  }
+
+  public Decimal128 readDecimal128() {
+    value(DECIMAL128);
+    Decimal128 value = new Decimal128(buffer, pos);
+    pos += 16;
+    state = State.TYPE;
+    return value;
+  }
+
+  public ObjectId readObjectId() {
+    value(OBJECT_ID);
+    ObjectId value = new ObjectId(buffer, pos);
+    pos += 12;
+    state = State.TYPE;
+    return value;
+  }
+
+  /**
+   * @return the binary subtype of the current element, the data itself is read with {@link #readBinaryData()}
+   */
+  public byte peekBinarySubType() {
+    value(BINARY);
+    return LE.getByte(buffer, pos + 4);
+  }
+
+  /**
+   * Reads the data of a binary element of any subtype.
+   */
+  public byte[] readBinaryData() {
+    value(BINARY);
+    int binLen = LE.getInt(buffer, pos);
+    byte[] value = LE.getBytes(buffer, pos + 5, binLen);
+    pos += 5 + binLen;
+    state = State.TYPE;
+    return value;
+  }
+
+  public void readNull() {
+    value(NULL);
+    state = State.TYPE;
+  }
+
+  /**
+   * Decodes the current value into the same object {@link BSONMessageCodec} would produce.
+   */
+  public Object readValue() {
+    value(type);
+    Object value = decodeValue(buffer, type, pos);
+    pos += valueLength(buffer, type, pos);
+    state = State.TYPE;
+    return value;
+  }
+
+  private void start(byte expected) {
+    value(expected);
+    if (depth == ends.length) {
+      ends = Arrays.copyOf(ends, depth * 2);
+    }
+    // the terminating 0x00
+    ends[depth++] = pos + LE.getInt(buffer, pos) - 1;
+    pos += 4;
+    state = State.TYPE;
+  }
+
+  private void end() {
+    if (depth == 0) {
+      throw new IllegalStateException("No document started");
+    }
+    pos = ends[--depth] + 1;
+    state = State.TYPE;
+    type = END_OF_DOCUMENT;
+  }
+
+  /**
+   * Moves to the value of the current element and verifies its type.
+   */
+  private void value(byte expected) {
+    if (state == State.NAME) {
+      skipName();
+    }
+    checkState(State.VALUE);
+    if (type != expected) {
+      throw new DecodeException("Expected BSON type " + expected + " but found " + type);
+    }
+  }
+
+  private void checkState(State expected) {
+    if (state != expected) {
+      throw new IllegalStateException("Invalid reader state " + state + ", expected " + expected);
+    }
+  }
+}
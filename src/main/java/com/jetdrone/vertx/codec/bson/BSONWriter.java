@@ -0,0 +1,302 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.FieldNameCache;
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Arrays;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.*;
+
+/**
+ * Push style writer that emits BSON straight into a buffer, without building a {@link BSONDocument} first:
+ * <pre>
+ * BSONWriter writer = new BSONWriter();
+ * writer.writeStartDocument();
+ * writer.writeName("id");
+ * writer.writeInt32(7);
+ * writer.writeStartArray("values");
+ * writer.writeDouble(0.5);
+ * writer.writeEndArray();
+ * writer.writeEndDocument();
+ *
+ * eb.send("address", writer.toDocument(), new DeliveryOptions().setCodecName("RawBSON"));
+ * </pre>
+ * Inside arrays the element names are generated, elsewhere every value must be preceded by {@link #writeName(String)}.
+ * The encoded document can be sent on the event bus without being encoded again with {@link RawBSONMessageCodec}.
+ * A writer is not thread safe.
+ */
+public class BSONWriter {
+
+  private final Buffer buffer;
+
+  // position of the type byte of the current element, -1 when no name was written
+  private int typePos = -1;
+
+  // for each open document: position of its length, and for arrays the next index (-1 for documents)
+  private int[] starts = new int[8];
+  private int[] indexes = new int[8];
+  private int depth;
+  // position of the last top level document
+  private int documentStart;
+
+  /**
+   * Creates a writer with a new buffer.
+   */
+  public BSONWriter() {
+    this(Buffer.buffer());
+  }
+
+  /**
+   * Creates a writer that appends to the given buffer.
+   */
+  public BSONWriter(Buffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * @return the buffer the document is written to
+   */
+  public Buffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * @return a read only view over the written document, the buffer is not copied
+   */
+  public RawBSONDocument toDocument() {
+    if (depth != 0) {
+      throw new IllegalStateException("Document not complete");
+    }
+    return RawBSONDocument.slice(buffer, documentStart);
+  }
+
+  /**
+   * Starts the top level document, or an embedded document after {@link #writeName(String)}.
+   */
+  public BSONWriter writeStartDocument() {
+    if (depth > 0) {
+      value(EMBEDDED_DOCUMENT);
+    }
+    return start(-1);
+  }
+
+  public BSONWriter writeStartDocument(String name) {
+    return writeName(name).writeStartDocument();
+  }
+
+  public BSONWriter writeEndDocument() {
+    return end(false);
+  }
+
+  /**
+   * Starts an array after {@link #writeName(String)} or inside another array.
+   */
+  public BSONWriter writeStartArray() {
+    value(ARRAY);
+    return start(0);
+  }
+
+  public BSONWriter writeStartArray(String name) {
+    return writeName(name).writeStartArray();
+  }
+
+  public BSONWriter writeEndArray() {
+    return end(true);
+  }
+
+  /**
+   * Writes the name of the next element of the current document.
+   */
+  public BSONWriter writeName(String name) {
+    if (depth == 0 || indexes[depth - 1] != -1) {
+      throw new IllegalStateException("Names can only be written inside a document");
+    }
+    if (typePos != -1) {
+      throw new IllegalStateException("Name already written");
+    }
+    typePos = buffer.length();
+    // the type is set once the value is written
+    LE.appendByte(buffer, (byte) 0x00);
+    FieldNameCache.append(buffer, name);
+    return this;
+  }
+
+  public BSONWriter writeDouble(double value) {
+    value(FLOAT);
+    LE.appendDouble(buffer, value);
+    return this;
+  }
+
+  public BSONWriter writeString(String value) {
+    value(STRING);
+    LE.appendString(buffer, value);
+    return this;
+  }
+
+  public BSONWriter writeInt32(int value) {
+    value(INT32);
+    LE.appendInt(buffer, value);
+    return this;
+  }
+
+  public BSONWriter writeInt64(long value) {
+    value(INT64);
+    LE.appendLong(buffer, value);
+    return this;
+  }
+
+  public BSONWriter writeBoolean(boolean value) {
+    value(BOOLEAN);
+    LE.appendBoolean(buffer, value);
+    return this;
+  }
+
+  /**
+   * @param value milliseconds since the epoch
+   */
+  public BSONWriter writeDateTime(long value) {
+    value(UTC_DATETIME);
+    LE.appendLong(buffer, value);
+    return this;
+  }
+
+  public BSONWriter writeDecimal128(Decimal128 value) {
+    value(DECIMAL128);
+    value.writeTo(buffer);
+    return this;
+  }
+
+  public BSONWriter writeObjectId(ObjectId value) {
+    value(OBJECT_ID);
+    value.writeTo(buffer);
+    return this;
+  }
+
+  /**
+   * Writes a newly generated ObjectId, without allocating it.
+   */
+  public BSONWriter writeNewObjectId() {
+    value(OBJECT_ID);
+    ObjectId.generate(buffer, 1);
+    return this;
+  }
+
+  /**
+   * Writes generic binary data.
+   */
+  public BSONWriter writeBinaryData(byte[] value) {
+    value(BINARY);
+    LE.appendInt(buffer, value.length);
+    LE.appendByte(buffer, BINARY_BINARY);
+    LE.appendBytes(buffer, value);
+    return this;
+  }
+
+  public BSONWriter writeNull() {
+    value(NULL);
+    return this;
+  }
+
+  /**
+   * Writes any value supported by {@link BSONMessageCodec}.
+   */
+  public BSONWriter writeValue(Object value) {
+    int pos = value((byte) 0x00);
+    LE.setByte(buffer, pos, encodeValue(buffer, value));
+    return this;
+  }
+
+  public BSONWriter writeDouble(String name, double value) {
+    return writeName(name).writeDouble(value);
+  }
+
+  public BSONWriter writeString(String name, String value) {
+    return writeName(name).writeString(value);
+  }
+
+  public BSONWriter writeInt32(String name, int value) {
+    return writeName(name).writeInt32(value);
+  }
+
+  public BSONWriter writeInt64(String name, long value) {
+    return writeName(name).writeInt64(value);
+  }
+
+  public BSONWriter writeBoolean(String name, boolean value) {
+    return writeName(name).writeBoolean(value);
+  }
+
+  public BSONWriter writeDecimal128(String name, Decimal128 value) {
+    return writeName(name).writeDecimal128(value);
+  }
+
+  public BSONWriter writeObjectId(String name, ObjectId value) {
+    return writeName(name).writeObjectId(value);
+  }
+
+  /**
+   * Writes a newly generated ObjectId, e.g. {@code writeNewObjectId("_id")}.
+   */
+  public BSONWriter writeNewObjectId(String name) {
+    return writeName(name).writeNewObjectId();
+  }
+
+  /**
+   * Sets the type of the current element, writing the index as name inside arrays.
+   *
+   * @return the position of the type byte
+   */
+  private int value(byte type) {
+    if (depth == 0) {
+      throw new IllegalStateException("No document started");
+    }
+
+    int pos;
+    int index = indexes[depth - 1];
+    if (index != -1) {
+      pos = buffer.length();
+      LE.appendByte(buffer, type);
+      appendIndexKey(buffer, index);
+      indexes[depth - 1]++;
+    } else {
+      if (typePos == -1) {
+        throw new IllegalStateException("Values inside a document must be preceded by a name");
+      }
+      pos = typePos;
+      LE.setByte(buffer, pos, type);
+      typePos = -1;
+    }
+    return pos;
+  }
+
+  private BSONWriter start(int index) {
+    if (depth == starts.length) {
+      starts = Arrays.copyOf(starts, depth * 2);
+      indexes = Arrays.copyOf(indexes, depth * 2);
+    }
+    if (depth == 0) {
+      documentStart = buffer.length();
+    }
+    starts[depth] = buffer.length();
+    indexes[depth] = index;
+    depth++;
+    // allocate space for the document length
+    LE.appendInt(buffer, 0);
+    return this;
+  }
+
+  private BSONWriter end(boolean array) {
+    if (depth == 0 || (indexes[depth - 1] != -1) != array) {
+      throw new IllegalStateException(array ? "No array started" : "No document started");
+    }
+    if (typePos != -1) {
+      throw new IllegalStateException("Name without value");
+    }
+    depth--;
+    int base = starts[depth];
+    LE.setInt(buffer, base, buffer.length() + 1 - base);
+    LE.appendByte(buffer, (byte) 0x00);
+    return this;
+  }
+}
@@ -0,0 +1,270 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * A BSON Decimal128 value, an IEEE 754-2008 128 bit decimal in the binary integer decimal encoding, held as its two 64
+ * bit halves.
+ * <p>
+ * Values whose coefficient fits in a long are converted from and to {@link BigDecimal} with plain long arithmetic, only
+ * larger coefficients go through {@link BigInteger}. Unlike {@link BigDecimal} it can hold NaN, the infinities and
+ * negative zero.
+ */
+public final class Decimal128 extends Number {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int EXPONENT_BIAS = 6176;
+  private static final int MIN_EXPONENT = -6176;
+  private static final int MAX_EXPONENT = 6111;
+  private static final int MAX_DIGITS = 34;
+
+  private static final long SIGN_BIT = 0x8000000000000000L;
+  private static final long INFINITY_MASK = 0x7800000000000000L;
+  private static final long NAN_MASK = 0x7c00000000000000L;
+  // with both bits set the coefficient would not fit in 113 bits, such values are read as 0
+  private static final long TWO_HIGH_COMBINATION_BITS = 0x6000000000000000L;
+  private static final long COEFFICIENT_HIGH_MASK = 0x0001ffffffffffffL;
+
+  private static final BigInteger MAX_COEFFICIENT = BigInteger.TEN.pow(MAX_DIGITS).subtract(BigInteger.ONE);
+
+  public static final Decimal128 NaN = new Decimal128(NAN_MASK, 0);
+  public static final Decimal128 POSITIVE_INFINITY = new Decimal128(INFINITY_MASK, 0);
+  public static final Decimal128 NEGATIVE_INFINITY = new Decimal128(SIGN_BIT | INFINITY_MASK, 0);
+  public static final Decimal128 POSITIVE_ZERO = valueOf(0, 0);
+  public static final Decimal128 NEGATIVE_ZERO = new Decimal128(SIGN_BIT | POSITIVE_ZERO.high, 0);
+
+  private final long high;
+  private final long low;
+
+  /**
+   * Creates a value from its encoding.
+   *
+   * @param high the most significant 64 bits
+   * @param low the least significant 64 bits
+   */
+  public Decimal128(long high, long low) {
+    this.high = high;
+    this.low = low;
+  }
+
+  /**
+   * Reads the 16 little endian bytes starting at pos.
+   */
+  public Decimal128(Buffer buffer, int pos) {
+    low = Long.reverseBytes(buffer.getLong(pos));
+    high = Long.reverseBytes(buffer.getLong(pos + 8));
+  }
+
+  /**
+   * @return unscaledValue &times; 10<sup>-scale</sup>, computed without {@link BigInteger} when the scale is in range
+   */
+  public static Decimal128 valueOf(long unscaledValue, int scale) {
+    int exponent = -scale;
+    if (exponent < MIN_EXPONENT || exponent > MAX_EXPONENT) {
+      return valueOf(BigDecimal.valueOf(unscaledValue, scale));
+    }
+    long sign = unscaledValue < 0 ? SIGN_BIT : 0;
+    // the magnitude of Long.MIN_VALUE is right as an unsigned value
+    long coefficient = unscaledValue < 0 ? -unscaledValue : unscaledValue;
+    return new Decimal128(sign | (long) (exponent + EXPONENT_BIAS) << 49, coefficient);
+  }
+
+  /**
+   * @throws NumberFormatException if the value can not be represented without rounding
+   */
+  public static Decimal128 valueOf(BigDecimal value) {
+    value = clamp(value);
+
+    // the coefficient fits in a long, skip the BigInteger
+    if (value.precision() <= 18) {
+      return valueOf(value.scaleByPowerOfTen(value.scale()).longValueExact(), value.scale());
+    }
+
+    BigInteger unscaled = value.unscaledValue();
+    BigInteger coefficient = unscaled.abs();
+    long sign = unscaled.signum() < 0 ? SIGN_BIT : 0;
+    long exponent = -value.scale() + EXPONENT_BIAS;
+    return new Decimal128(
+        sign | exponent << 49 | coefficient.shiftRight(64).longValue(),
+        coefficient.longValue());
+  }
+
+  /**
+   * Parses a decimal number, {@code NaN}, {@code Infinity} or {@code -Infinity}.
+   *
+   * @throws NumberFormatException if the value is not a number or can not be represented without rounding
+   */
+  public static Decimal128 parse(String value) {
+    switch (value) {
+      case "NaN":
+        return NaN;
+      case "Infinity":
+      case "+Infinity":
+        return POSITIVE_INFINITY;
+      case "-Infinity":
+        return NEGATIVE_INFINITY;
+    }
+
+    Decimal128 result = valueOf(new BigDecimal(value));
+    if (value.charAt(0) == '-' && result.low == 0 && (result.high & COEFFICIENT_HIGH_MASK) == 0) {
+      // BigDecimal has no negative zero
+      return new Decimal128(result.high | SIGN_BIT, 0);
+    }
+    return result;
+  }
+
+  /**
+   * Brings the exponent in range and the precision down to 34 digits, as long as no digit is lost.
+   */
+  private static BigDecimal clamp(BigDecimal value) {
+    try {
+      if (value.precision() > MAX_DIGITS) {
+        value = value.setScale(value.scale() - (value.precision() - MAX_DIGITS), RoundingMode.UNNECESSARY);
+      }
+      if (-value.scale() > MAX_EXPONENT) {
+        value = value.setScale(-MAX_EXPONENT, RoundingMode.UNNECESSARY);
+        // zero never gains digits
+        if (value.precision() > MAX_DIGITS && value.signum() != 0) {
+          throw new NumberFormatException("Exponent out of range for Decimal128: " + value);
+        }
+      } else if (-value.scale() < MIN_EXPONENT) {
+        value = value.setScale(-MIN_EXPONENT, RoundingMode.UNNECESSARY);
+      }
+      return value;
+    } catch (ArithmeticException e) {
+      throw new NumberFormatException("Conversion to Decimal128 would require rounding: " + value);
+    }
+  }
+
+  public long getHigh() {
+    return high;
+  }
+
+  public long getLow() {
+    return low;
+  }
+
+  /**
+   * Appends the 16 bytes, little endian.
+   */
+  public void writeTo(Buffer buffer) {
+    buffer.appendLong(Long.reverseBytes(low));
+    buffer.appendLong(Long.reverseBytes(high));
+  }
+
+  public boolean isNaN() {
+    return (high & NAN_MASK) == NAN_MASK;
+  }
+
+  public boolean isInfinite() {
+    return (high & NAN_MASK) == INFINITY_MASK;
+  }
+
+  public boolean isFinite() {
+    return (high & INFINITY_MASK) != INFINITY_MASK;
+  }
+
+  public boolean isNegative() {
+    return (high & SIGN_BIT) != 0;
+  }
+
+  /**
+   * @return the value as a BigDecimal, negative zero becomes zero
+   * @throws ArithmeticException for NaN and the infinities
+   */
+  public BigDecimal bigDecimalValue() {
+    if (!isFinite()) {
+      throw new ArithmeticException(toString() + " can not be converted to a BigDecimal");
+    }
+
+    final int scale = -exponent();
+    if ((high & TWO_HIGH_COMBINATION_BITS) == TWO_HIGH_COMBINATION_BITS) {
+      return BigDecimal.valueOf(0, scale);
+    }
+
+    final long coefficientHigh = high & COEFFICIENT_HIGH_MASK;
+    if (coefficientHigh == 0 && low >= 0) {
+      return BigDecimal.valueOf(isNegative() ? -low : low, scale);
+    }
+
+    BigInteger coefficient = BigInteger.valueOf(coefficientHigh).shiftLeft(64)
+        .or(BigInteger.valueOf(low >>> 1).shiftLeft(1))
+        .or(BigInteger.valueOf(low & 1));
+    if (coefficient.compareTo(MAX_COEFFICIENT) > 0) {
+      // non canonical
+      return BigDecimal.valueOf(0, scale);
+    }
+    return new BigDecimal(isNegative() ? coefficient.negate() : coefficient, scale);
+  }
+
+  private int exponent() {
+    if ((high & TWO_HIGH_COMBINATION_BITS) == TWO_HIGH_COMBINATION_BITS) {
+      return (int) ((high >>> 47) & 0x3fff) - EXPONENT_BIAS;
+    }
+    return (int) ((high >>> 49) & 0x3fff) - EXPONENT_BIAS;
+  }
+
+  @Override
+  public double doubleValue() {
+    if (isNaN()) {
+      return Double.NaN;
+    }
+    if (isInfinite()) {
+      return isNegative() ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+    double value = bigDecimalValue().doubleValue();
+    return value == 0 && isNegative() ? -0.0d : value;
+  }
+
+  @Override
+  public float floatValue() {
+    return (float) doubleValue();
+  }
+
+  @Override
+  public long longValue() {
+    // going through double would lose digits above 2^53
+    return isFinite() ? bigDecimalValue().longValue() : (long) doubleValue();
+  }
+
+  @Override
+  public int intValue() {
+    return isFinite() ? bigDecimalValue().intValue() : (int) doubleValue();
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(high) + Long.hashCode(low);
+  }
+
+  /**
+   * Compares the encodings, e.g. 1.0 and 1.00 are not equal.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this)
+      return true;
+    if (!(obj instanceof Decimal128))
+      return false;
+
+    Decimal128 rhs = (Decimal128) obj;
+    return high == rhs.high && low == rhs.low;
+  }
+
+  @Override
+  public String toString() {
+    if (isNaN()) {
+      return "NaN";
+    }
+    if (isInfinite()) {
+      return isNegative() ? "-Infinity" : "Infinity";
+    }
+    BigDecimal value = bigDecimalValue();
+    return isNegative() && value.signum() == 0 ? "-" + value : value.toString();
+  }
+}
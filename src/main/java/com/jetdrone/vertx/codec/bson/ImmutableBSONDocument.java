@@ -0,0 +1,402 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Immutable snapshot of a document.
+ * <p>
+ * Embedded documents and lists are frozen recursively when the snapshot is taken, after that a snapshot is never copied
+ * again: {@link #snapshot()} returns the same instance and {@link #with(String, Object)}/{@link #without(String)}
+ * return new documents that share all the other values, including the embedded documents. This makes it safe to hand
+ * the same instance to every local consumer, which is what {@link BSONMessageCodec#transform(BSONDocument)} does when
+ * {@link BSONCodecOptions#setImmutableDelivery(boolean)} is enabled.
+ * <p>
+ * {@code byte[]}, primitive arrays, {@link Date} and {@link Buffer} values are copied into the snapshot but the copies
+ * are shared by every reader, so they must not be modified.
+ */
+public final class ImmutableBSONDocument extends BSONDocument {
+
+  /**
+   * The empty document.
+   */
+  public static final ImmutableBSONDocument EMPTY = new ImmutableBSONDocument(new String[0], new Object[0]);
+
+  // documents up to this size are searched linearly
+  private static final int INDEX_THRESHOLD = 8;
+
+  private final String[] keys;
+  private final Object[] values;
+
+  // key positions of large documents, built on first lookup
+  private Index index;
+
+  private static final class Index {
+    final Map<String, Integer> positions;
+
+    Index(String[] keys) {
+      Map<String, Integer> positions = new HashMap<>(keys.length * 2);
+      for (int i = 0; i < keys.length; i++) {
+        positions.put(keys[i], i);
+      }
+      this.positions = positions;
+    }
+  }
+
+  private ImmutableBSONDocument(String[] keys, Object[] values) {
+    this.keys = keys;
+    this.values = values;
+  }
+
+  /**
+   * Takes an immutable snapshot of the map, snapshots are returned as is.
+   */
+  public static ImmutableBSONDocument copyOf(Map<String, ?> map) {
+    if (map instanceof ImmutableBSONDocument) {
+      return (ImmutableBSONDocument) map;
+    }
+    if (map.isEmpty()) {
+      return EMPTY;
+    }
+
+    String[] keys = new String[map.size()];
+    Object[] values = new Object[keys.length];
+    int i = 0;
+    for (Map.Entry<String, ?> entry : map.entrySet()) {
+      keys[i] = entry.getKey();
+      values[i] = freeze(entry.getValue());
+      i++;
+    }
+    return new ImmutableBSONDocument(keys, values);
+  }
+
+  /**
+   * @return this document, it is already immutable
+   */
+  @Override
+  public ImmutableBSONDocument snapshot() {
+    return this;
+  }
+
+  /**
+   * @return a document with the field set to the value, the other values are shared with this document
+   */
+  public ImmutableBSONDocument with(String key, Object value) {
+    Object frozen = freeze(value);
+    int i = indexOf(key);
+    if (i != -1) {
+      if (values[i] == frozen) {
+        return this;
+      }
+      // same keys, only the values change
+      Object[] newValues = values.clone();
+      newValues[i] = frozen;
+      return new ImmutableBSONDocument(keys, newValues);
+    }
+
+    String[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+    Object[] newValues = Arrays.copyOf(values, values.length + 1);
+    newKeys[keys.length] = key;
+    newValues[values.length] = frozen;
+    return new ImmutableBSONDocument(newKeys, newValues);
+  }
+
+  /**
+   * @return a document without the field, the other values are shared with this document
+   */
+  public ImmutableBSONDocument without(String key) {
+    int i = indexOf(key);
+    if (i == -1) {
+      return this;
+    }
+    if (keys.length == 1) {
+      return EMPTY;
+    }
+
+    String[] newKeys = new String[keys.length - 1];
+    Object[] newValues = new Object[values.length - 1];
+    System.arraycopy(keys, 0, newKeys, 0, i);
+    System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+    System.arraycopy(values, 0, newValues, 0, i);
+    System.arraycopy(values, i + 1, newValues, i, values.length - i - 1);
+    return new ImmutableBSONDocument(newKeys, newValues);
+  }
+
+  @Override
+  public int size() {
+    return keys.length;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return keys.length == 0;
+  }
+
+  @Override
+  public Object get(Object key) {
+    int i = indexOf(key);
+    return i == -1 ? null : values[i];
+  }
+
+  @Override
+  public Object getOrDefault(Object key, Object defaultValue) {
+    int i = indexOf(key);
+    return i == -1 ? defaultValue : values[i];
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) != -1;
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    for (Object v : values) {
+      if (Objects.equals(v, value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super Object> action) {
+    for (int i = 0; i < keys.length; i++) {
+      action.accept(keys[i], values[i]);
+    }
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return new AbstractSet<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        return new ArrayIterator<>(keys);
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+
+      @Override
+      public int size() {
+        return keys.length;
+      }
+    };
+  }
+
+  @Override
+  public Collection<Object> values() {
+    return Collections.unmodifiableList(Arrays.asList(values));
+  }
+
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return new AbstractSet<Map.Entry<String, Object>>() {
+      @Override
+      public Iterator<Map.Entry<String, Object>> iterator() {
+        return new Iterator<Map.Entry<String, Object>>() {
+          private int i;
+
+          @Override
+          public boolean hasNext() {
+            return i < keys.length;
+          }
+
+          @Override
+          public Map.Entry<String, Object> next() {
+            if (i >= keys.length) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<String, Object> entry = new AbstractMap.SimpleImmutableEntry<>(keys[i], values[i]);
+            i++;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return keys.length;
+      }
+    };
+  }
+
+  @Override
+  public Object clone() {
+    return this;
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void putAll(Map<? extends String, ?> m) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Object remove(Object key) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Object putIfAbsent(String key, Object value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean replace(String key, Object oldValue, Object newValue) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Object replace(String key, Object value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+    throw new UnsupportedOperationException();
+  }
+
+  private int indexOf(Object key) {
+    if (keys.length > INDEX_THRESHOLD) {
+      Index idx = index;
+      if (idx == null) {
+        // racy but safe, the index is immutable once built
+        index = idx = new Index(keys);
+      }
+      Integer i = idx.positions.get(key);
+      return i == null ? -1 : i;
+    }
+
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i].equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // the map state lives in the arrays, serialize as a plain document
+  private Object writeReplace() {
+    BSONDocument document = new BSONDocument();
+    forEach(document::put);
+    return document;
+  }
+
+  /**
+   * @return an immutable equivalent of the value
+   */
+  static Object freeze(Object value) {
+    if (value instanceof ImmutableBSONDocument || value instanceof FrozenList ||
+        value instanceof RawBSONDocument || value instanceof RawBSONList) {
+      // already read only
+      return value;
+    } else if (value instanceof Map) {
+      @SuppressWarnings("unchecked")
+      Map<String, ?> map = (Map<String, ?>) value;
+      return copyOf(map);
+    } else if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      Object[] elements = new Object[list.size()];
+      int i = 0;
+      for (Object element : list) {
+        elements[i++] = freeze(element);
+      }
+      return new FrozenList(elements);
+    } else if (value instanceof byte[]) {
+      return ((byte[]) value).clone();
+    } else if (value instanceof int[]) {
+      return ((int[]) value).clone();
+    } else if (value instanceof long[]) {
+      return ((long[]) value).clone();
+    } else if (value instanceof double[]) {
+      return ((double[]) value).clone();
+    } else if (value instanceof Date) {
+      return ((Date) value).clone();
+    } else if (value instanceof Buffer) {
+      return ((Buffer) value).copy();
+    }
+    // strings, numbers and the other value types are immutable
+    return value;
+  }
+
+  private static final class FrozenList extends AbstractList<Object> implements RandomAccess {
+    private final Object[] elements;
+
+    FrozenList(Object[] elements) {
+      this.elements = elements;
+    }
+
+    @Override
+    public Object get(int index) {
+      return elements[index];
+    }
+
+    @Override
+    public int size() {
+      return elements.length;
+    }
+  }
+
+  private static final class ArrayIterator<T> implements Iterator<T> {
+    private final T[] array;
+    private int i;
+
+    ArrayIterator(T[] array) {
+      this.array = array;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return i < array.length;
+    }
+
+    @Override
+    public T next() {
+      if (i >= array.length) {
+        throw new NoSuchElementException();
+      }
+      return array[i++];
+    }
+  }
+}
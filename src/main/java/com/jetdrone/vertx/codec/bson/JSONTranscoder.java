@@ -0,0 +1,1190 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.ISODate;
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.*;
+
+/**
+ * Converts JSON text to BSON and BSON to MongoDB Extended JSON (relaxed mode) in a single pass, without building
+ * {@link BSONDocument} or {@code JsonObject} instances.
+ * <p>
+ * JSON to BSON tokenizes the UTF-8 bytes and writes each value as it is read: strings are copied byte for byte (only
+ * escapes are decoded), integers become 32 or 64 bit integers when they fit and doubles otherwise. Extended JSON
+ * wrappers such as <code>{"$oid": "..."}</code> or <code>{"$date": "..."}</code> are turned into their BSON types.
+ * BSON to JSON writes Extended JSON straight from the encoded bytes, so the output of one reads back to the same BSON:
+ * 64 bit integers small enough to read back as 32 bit ones are written as <code>{"$numberLong": "..."}</code>, and
+ * JavaScript code, symbols and DBPointers use their Extended JSON wrappers. In <code>{"$code": ..., "$scope": ...}</code>
+ * the code must come first, as written by this class.
+ */
+public final class JSONTranscoder {
+
+  // deeper input is rejected instead of overflowing the stack
+  private static final int MAX_DEPTH = 512;
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] TRUE = bytes("true");
+  private static final byte[] FALSE = bytes("false");
+  private static final byte[] NULL_LITERAL = bytes("null");
+  private static final byte[] ONE = bytes("1");
+
+  private static final byte[] $OID = bytes("$oid");
+  private static final byte[] $DATE = bytes("$date");
+  private static final byte[] $NUMBER_INT = bytes("$numberInt");
+  private static final byte[] $NUMBER_LONG = bytes("$numberLong");
+  private static final byte[] $NUMBER_DOUBLE = bytes("$numberDouble");
+  private static final byte[] $NUMBER_DECIMAL = bytes("$numberDecimal");
+  private static final byte[] $BINARY = bytes("$binary");
+  private static final byte[] $REGULAR_EXPRESSION = bytes("$regularExpression");
+  private static final byte[] $TIMESTAMP = bytes("$timestamp");
+  private static final byte[] $MIN_KEY = bytes("$minKey");
+  private static final byte[] $MAX_KEY = bytes("$maxKey");
+  private static final byte[] $UNDEFINED = bytes("$undefined");
+  private static final byte[] $CODE = bytes("$code");
+  private static final byte[] $SCOPE = bytes("$scope");
+  private static final byte[] $SYMBOL = bytes("$symbol");
+  private static final byte[] $DB_POINTER = bytes("$dbPointer");
+  private static final byte[] $REF = bytes("$ref");
+  private static final byte[] $ID = bytes("$id");
+  private static final byte[] BASE64 = bytes("base64");
+  private static final byte[] SUB_TYPE = bytes("subType");
+  private static final byte[] PATTERN = bytes("pattern");
+  private static final byte[] OPTIONS = bytes("options");
+  private static final byte[] T = bytes("t");
+  private static final byte[] I = bytes("i");
+
+  // doubles that are exact, for the fast path of number parsing
+  private static final double[] POWERS_OF_TEN = new double[23];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private JSONTranscoder() {
+  }
+
+  /**
+   * @return the BSON document of the UTF-8 JSON object in the buffer
+   */
+  public static Buffer toBSON(Buffer json) {
+    Buffer bson = Buffer.buffer(json.length());
+    toBSON(json, bson);
+    return bson;
+  }
+
+  /**
+   * Appends the BSON document of the UTF-8 JSON object in the buffer, the text is expected to be valid UTF-8.
+   *
+   * @throws DecodeException if the text is not a JSON object
+   */
+  public static void toBSON(Buffer json, Buffer bson) {
+    Parser parser = new Parser(json, bson);
+    parser.skipWhitespace();
+    if (parser.peek() != '{') {
+      throw parser.error("JSON text must be an object");
+    }
+    parser.pos++;
+    parser.document(0);
+    parser.skipWhitespace();
+    if (parser.pos != parser.end) {
+      throw parser.error("Unexpected content after the document");
+    }
+  }
+
+  /**
+   * @return the Extended JSON text of the BSON document in the buffer
+   */
+  public static String toJSON(Buffer bson) {
+    Buffer json = Buffer.buffer(bson.length() * 2);
+    toJSON(bson, 0, json);
+    return json.toString(StandardCharsets.UTF_8.name());
+  }
+
+  /**
+   * Appends the UTF-8 Extended JSON text of the BSON document that starts at pos.
+   */
+  public static void toJSON(Buffer bson, int pos, Buffer json) {
+    writeDocument(bson, pos, json, false, 0);
+  }
+
+  private static final class Parser {
+
+    private final Buffer in;
+    private final Buffer out;
+    private final int end;
+    private int pos;
+
+    Parser(Buffer in, Buffer out) {
+      this.in = in;
+      this.out = out;
+      this.end = in.length();
+    }
+
+    /**
+     * Reads the members of an object whose '{' was consumed.
+     */
+    void document(int depth) {
+      if (depth == MAX_DEPTH) {
+        throw error("JSON nested too deep");
+      }
+      final int start = out.length();
+      LE.appendInt(out, 0);
+
+      skipWhitespace();
+      if (peek() == '}') {
+        pos++;
+      } else {
+        while (true) {
+          expect('"');
+          int typePos = out.length();
+          LE.appendByte(out, (byte) 0x00);
+          copyString(pos, true);
+          LE.appendByte(out, (byte) 0x00);
+          skipWhitespace();
+          expect(':');
+          value(typePos, depth);
+          skipWhitespace();
+          byte c = next();
+          if (c == '}') {
+            break;
+          }
+          if (c != ',') {
+            throw error("Expected ',' or '}'");
+          }
+          skipWhitespace();
+        }
+      }
+
+      LE.appendByte(out, (byte) 0x00);
+      LE.setInt(out, start, out.length() - start);
+    }
+
+    /**
+     * Reads the elements of an array whose '[' was consumed.
+     */
+    void array(int depth) {
+      if (depth == MAX_DEPTH) {
+        throw error("JSON nested too deep");
+      }
+      final int start = out.length();
+      LE.appendInt(out, 0);
+
+      skipWhitespace();
+      if (peek() == ']') {
+        pos++;
+      } else {
+        for (int index = 0; ; index++) {
+          int typePos = out.length();
+          LE.appendByte(out, (byte) 0x00);
+          appendIndexKey(out, index);
+          value(typePos, depth);
+          skipWhitespace();
+          byte c = next();
+          if (c == ']') {
+            break;
+          }
+          if (c != ',') {
+            throw error("Expected ',' or ']'");
+          }
+        }
+      }
+
+      LE.appendByte(out, (byte) 0x00);
+      LE.setInt(out, start, out.length() - start);
+    }
+
+    /**
+     * Reads a value and sets its type at typePos.
+     */
+    void value(int typePos, int depth) {
+      skipWhitespace();
+      byte type;
+      switch (peek()) {
+        case '{':
+          pos++;
+          type = extended(depth);
+          if (type == END_OF_DOCUMENT) {
+            document(depth + 1);
+            type = EMBEDDED_DOCUMENT;
+          }
+          break;
+        case '[':
+          pos++;
+          array(depth + 1);
+          type = ARRAY;
+          break;
+        case '"':
+          pos++;
+          string();
+          type = STRING;
+          break;
+        case 't':
+          literal(TRUE);
+          LE.appendBoolean(out, true);
+          type = BOOLEAN;
+          break;
+        case 'f':
+          literal(FALSE);
+          LE.appendBoolean(out, false);
+          type = BOOLEAN;
+          break;
+        case 'n':
+          literal(NULL_LITERAL);
+          type = NULL;
+          break;
+        default:
+          type = number();
+      }
+      LE.setByte(out, typePos, type);
+    }
+
+    /**
+     * Reads an Extended JSON wrapper whose '{' was consumed.
+     *
+     * @return the BSON type of the written value, {@link BSONMessageCodec#END_OF_DOCUMENT} if the object is not a
+     * wrapper, nothing is consumed in that case
+     */
+    @SuppressWarnings("deprecation")
+    byte extended(int depth) {
+      final int start = pos;
+      skipWhitespace();
+      if (peek() != '"' || pos + 1 >= end || in.getByte(pos + 1) != '$') {
+        pos = start;
+        return END_OF_DOCUMENT;
+      }
+      pos++;
+      final int keyStart = pos;
+      final int keyEnd = skipString();
+      skipWhitespace();
+      expect(':');
+      skipWhitespace();
+
+      byte type;
+      if (equals(keyStart, keyEnd, $OID)) {
+        objectId();
+        type = OBJECT_ID;
+      } else if (equals(keyStart, keyEnd, $DATE)) {
+        date();
+        type = UTC_DATETIME;
+      } else if (equals(keyStart, keyEnd, $NUMBER_INT)) {
+        long value = parseLong(quoted());
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+          throw error("Invalid $numberInt");
+        }
+        LE.appendInt(out, (int) value);
+        type = INT32;
+      } else if (equals(keyStart, keyEnd, $NUMBER_LONG)) {
+        LE.appendLong(out, parseLong(quoted()));
+        type = INT64;
+      } else if (equals(keyStart, keyEnd, $NUMBER_DOUBLE)) {
+        int valueStart = quoted();
+        LE.appendDouble(out, Double.parseDouble(text(valueStart, pos - 1)));
+        type = FLOAT;
+      } else if (equals(keyStart, keyEnd, $NUMBER_DECIMAL)) {
+        int valueStart = quoted();
+        try {
+          Decimal128.parse(text(valueStart, pos - 1)).writeTo(out);
+        } catch (NumberFormatException e) {
+          throw error("Invalid $numberDecimal");
+        }
+        type = DECIMAL128;
+      } else if (equals(keyStart, keyEnd, $BINARY)) {
+        binary();
+        type = BINARY;
+      } else if (equals(keyStart, keyEnd, $REGULAR_EXPRESSION)) {
+        regularExpression();
+        type = REGEX;
+      } else if (equals(keyStart, keyEnd, $TIMESTAMP)) {
+        timestamp();
+        type = TIMESTAMP;
+      } else if (equals(keyStart, keyEnd, $MIN_KEY)) {
+        literal(ONE);
+        type = MINKEY;
+      } else if (equals(keyStart, keyEnd, $MAX_KEY)) {
+        literal(ONE);
+        type = MAXKEY;
+      } else if (equals(keyStart, keyEnd, $UNDEFINED)) {
+        literal(TRUE);
+        type = UNDEFINED;
+      } else if (equals(keyStart, keyEnd, $CODE)) {
+        type = code(depth);
+      } else if (equals(keyStart, keyEnd, $SYMBOL)) {
+        expect('"');
+        string();
+        type = SYMBOL;
+      } else if (equals(keyStart, keyEnd, $DB_POINTER)) {
+        dbPointer();
+        type = DBPOINTER;
+      } else {
+        // e.g. an update operator, read as a plain document
+        pos = start;
+        return END_OF_DOCUMENT;
+      }
+
+      skipWhitespace();
+      expect('}');
+      return type;
+    }
+
+    /**
+     * Reads the code string and the optional {@code $scope} that follows it.
+     *
+     * @return JSCODE or JSCODE_WS
+     */
+    private byte code(int depth) {
+      final int codeStart = pos;
+      quoted();
+      skipWhitespace();
+      final boolean scope = peek() == ',';
+      pos = codeStart;
+
+      if (!scope) {
+        expect('"');
+        string();
+        return JSCODE;
+      }
+
+      final int start = out.length();
+      LE.appendInt(out, 0);
+      expect('"');
+      string();
+      skipWhitespace();
+      expect(',');
+      skipWhitespace();
+      expect('"');
+      if (!equals(pos, skipString(), $SCOPE)) {
+        throw error("Invalid $code");
+      }
+      skipWhitespace();
+      expect(':');
+      skipWhitespace();
+      expect('{');
+      document(depth + 1);
+      LE.setInt(out, start, out.length() - start);
+      return JSCODE_WS;
+    }
+
+    private void dbPointer() {
+      expect('{');
+      int ref = -1;
+      int id = -1;
+      for (int i = 0; i < 2; i++) {
+        skipWhitespace();
+        expect('"');
+        int keyStart = pos;
+        int keyEnd = skipString();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        if (equals(keyStart, keyEnd, $REF)) {
+          ref = quoted();
+        } else if (equals(keyStart, keyEnd, $ID)) {
+          id = pos;
+          skipObjectId();
+        } else {
+          throw error("Invalid $dbPointer");
+        }
+        skipWhitespace();
+        if (i == 0) {
+          expect(',');
+        }
+      }
+      expect('}');
+      if (ref == -1 || id == -1) {
+        throw error("Invalid $dbPointer");
+      }
+
+      // BSON has the namespace first, whatever the order of the keys
+      int after = pos;
+      pos = ref;
+      string();
+      pos = id;
+      expect('{');
+      skipWhitespace();
+      expect('"');
+      skipString();
+      skipWhitespace();
+      expect(':');
+      skipWhitespace();
+      objectId();
+      pos = after;
+    }
+
+    /**
+     * Checks and skips a <code>{"$oid": "..."}</code> wrapper.
+     */
+    private void skipObjectId() {
+      expect('{');
+      skipWhitespace();
+      expect('"');
+      if (!equals(pos, skipString(), $OID)) {
+        throw error("Invalid $oid");
+      }
+      skipWhitespace();
+      expect(':');
+      skipWhitespace();
+      int start = quoted();
+      if (pos - 1 - start != 24) {
+        throw error("Invalid $oid");
+      }
+      skipWhitespace();
+      expect('}');
+    }
+
+    private void objectId() {
+      int start = quoted();
+      if (pos - 1 - start != 24) {
+        throw error("Invalid $oid");
+      }
+      for (int i = start; i < start + 24; i += 2) {
+        LE.appendByte(out, (byte) (hex(i) << 4 | hex(i + 1)));
+      }
+    }
+
+    private void date() {
+      long millis;
+      if (peek() == '"') {
+        int start = quoted();
+        try {
+          millis = ISODate.parse(in, start, pos - 1);
+        } catch (DateTimeParseException e) {
+          throw error("Invalid $date");
+        }
+      } else if (peek() == '{') {
+        pos++;
+        skipWhitespace();
+        expect('"');
+        int keyStart = pos;
+        if (!equals(keyStart, skipString(), $NUMBER_LONG)) {
+          throw error("Invalid $date");
+        }
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        millis = parseLong(quoted());
+        skipWhitespace();
+        expect('}');
+      } else {
+        throw error("Invalid $date");
+      }
+      LE.appendLong(out, millis);
+    }
+
+    private void binary() {
+      expect('{');
+      int data = -1;
+      int dataEnd = -1;
+      int subType = -1;
+      for (int i = 0; i < 2; i++) {
+        skipWhitespace();
+        expect('"');
+        int keyStart = pos;
+        int keyEnd = skipString();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        if (equals(keyStart, keyEnd, BASE64)) {
+          data = quoted();
+          dataEnd = pos - 1;
+        } else if (equals(keyStart, keyEnd, SUB_TYPE)) {
+          int start = quoted();
+          if (pos - 1 - start != 2) {
+            throw error("Invalid $binary subType");
+          }
+          subType = hex(start) << 4 | hex(start + 1);
+        } else {
+          throw error("Invalid $binary");
+        }
+        skipWhitespace();
+        if (i == 0) {
+          expect(',');
+        }
+      }
+      expect('}');
+      if (data == -1 || subType == -1) {
+        throw error("Invalid $binary");
+      }
+
+      ByteBuffer bytes;
+      try {
+        bytes = Base64.getDecoder().decode(in.getByteBuf().nioBuffer(data, dataEnd - data));
+      } catch (IllegalArgumentException e) {
+        throw error("Invalid $binary base64");
+      }
+      LE.appendInt(out, bytes.remaining());
+      LE.appendByte(out, (byte) subType);
+      appendBytes(bytes);
+    }
+
+    private void regularExpression() {
+      expect('{');
+      int pattern = -1;
+      int options = -1;
+      for (int i = 0; i < 2; i++) {
+        skipWhitespace();
+        expect('"');
+        int keyStart = pos;
+        int keyEnd = skipString();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        if (equals(keyStart, keyEnd, PATTERN)) {
+          pattern = quoted();
+        } else if (equals(keyStart, keyEnd, OPTIONS)) {
+          options = quoted();
+        } else {
+          throw error("Invalid $regularExpression");
+        }
+        skipWhitespace();
+        if (i == 0) {
+          expect(',');
+        }
+      }
+      expect('}');
+      if (pattern == -1 || options == -1) {
+        throw error("Invalid $regularExpression");
+      }
+
+      // BSON has the pattern first, whatever the order of the keys
+      int after = pos;
+      copyString(pattern, true);
+      LE.appendByte(out, (byte) 0x00);
+      copyString(options, true);
+      LE.appendByte(out, (byte) 0x00);
+      pos = after;
+    }
+
+    private void timestamp() {
+      expect('{');
+      long t = -1;
+      long i = -1;
+      for (int n = 0; n < 2; n++) {
+        skipWhitespace();
+        expect('"');
+        int keyStart = pos;
+        int keyEnd = skipString();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        int start = pos;
+        while (pos < end && in.getByte(pos) >= '0' && in.getByte(pos) <= '9') {
+          pos++;
+        }
+        long value = parseLong(start, pos);
+        if (equals(keyStart, keyEnd, T)) {
+          t = value;
+        } else if (equals(keyStart, keyEnd, I)) {
+          i = value;
+        } else {
+          throw error("Invalid $timestamp");
+        }
+        skipWhitespace();
+        if (n == 0) {
+          expect(',');
+        }
+      }
+      expect('}');
+      if (t < 0 || i < 0 || t > 0xffffffffL || i > 0xffffffffL) {
+        throw error("Invalid $timestamp");
+      }
+      // the increment is the low half
+      LE.appendLong(out, t << 32 | i);
+    }
+
+    /**
+     * Writes a string value whose '"' was consumed.
+     */
+    void string() {
+      final int start = out.length();
+      LE.appendInt(out, 0);
+      copyString(pos, false);
+      LE.appendByte(out, (byte) 0x00);
+      LE.setInt(out, start, out.length() - start - 4);
+    }
+
+    /**
+     * Copies the string that starts at from (after the opening '"') to the output, decoding the escapes, and leaves
+     * the position after the closing '"'.
+     *
+     * @param cstring true to reject the NUL character
+     */
+    void copyString(int from, boolean cstring) {
+      pos = from;
+      int run = pos;
+      while (true) {
+        if (pos >= end) {
+          throw error("Unterminated string");
+        }
+        byte c = in.getByte(pos);
+        if (c == '"') {
+          out.appendBuffer(in, run, pos - run);
+          pos++;
+          return;
+        }
+        if (c == '\\') {
+          out.appendBuffer(in, run, pos - run);
+          pos++;
+          escape(cstring);
+          run = pos;
+        } else if (c >= 0 && c < 0x20) {
+          throw error("Control character in string");
+        } else {
+          pos++;
+        }
+      }
+    }
+
+    private void escape(boolean cstring) {
+      byte c = next();
+      switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+          LE.appendByte(out, c);
+          break;
+        case 'b':
+          LE.appendByte(out, (byte) '\b');
+          break;
+        case 'f':
+          LE.appendByte(out, (byte) '\f');
+          break;
+        case 'n':
+          LE.appendByte(out, (byte) '\n');
+          break;
+        case 'r':
+          LE.appendByte(out, (byte) '\r');
+          break;
+        case 't':
+          LE.appendByte(out, (byte) '\t');
+          break;
+        case 'u':
+          int ch = unicode();
+          if (Character.isHighSurrogate((char) ch) && pos + 1 < end
+              && in.getByte(pos) == '\\' && in.getByte(pos + 1) == 'u') {
+            int mark = pos;
+            pos += 2;
+            int low = unicode();
+            if (Character.isLowSurrogate((char) low)) {
+              int cp = Character.toCodePoint((char) ch, (char) low);
+              LE.appendByte(out, (byte) (0xf0 | (cp >> 18)));
+              LE.appendByte(out, (byte) (0x80 | ((cp >> 12) & 0x3f)));
+              LE.appendByte(out, (byte) (0x80 | ((cp >> 6) & 0x3f)));
+              LE.appendByte(out, (byte) (0x80 | (cp & 0x3f)));
+              return;
+            }
+            pos = mark;
+          }
+          if (ch == 0 && cstring) {
+            throw error("Element names can not contain NUL");
+          }
+          if (ch < 0x80) {
+            LE.appendByte(out, (byte) ch);
+          } else if (ch < 0x800) {
+            LE.appendByte(out, (byte) (0xc0 | (ch >> 6)));
+            LE.appendByte(out, (byte) (0x80 | (ch & 0x3f)));
+          } else if (Character.isSurrogate((char) ch)) {
+            // like the encoder, unpaired surrogates become '?'
+            LE.appendByte(out, (byte) '?');
+          } else {
+            LE.appendByte(out, (byte) (0xe0 | (ch >> 12)));
+            LE.appendByte(out, (byte) (0x80 | ((ch >> 6) & 0x3f)));
+            LE.appendByte(out, (byte) (0x80 | (ch & 0x3f)));
+          }
+          break;
+        default:
+          throw error("Invalid escape");
+      }
+    }
+
+    private int unicode() {
+      if (pos + 4 > end) {
+        throw error("Invalid unicode escape");
+      }
+      int ch = hex(pos) << 12 | hex(pos + 1) << 8 | hex(pos + 2) << 4 | hex(pos + 3);
+      pos += 4;
+      return ch;
+    }
+
+    /**
+     * Writes a number as a 32 bit integer, 64 bit integer or double.
+     */
+    byte number() {
+      final int start = pos;
+      boolean negative = false;
+      if (pos < end && in.getByte(pos) == '-') {
+        negative = true;
+        pos++;
+      }
+
+      // digits are accumulated as a negative value so Long.MIN_VALUE fits
+      long mantissa = 0;
+      int digits = 0;
+      boolean overflow = false;
+      int intStart = pos;
+      while (pos < end && isDigit(in.getByte(pos))) {
+        int digit = in.getByte(pos) - '0';
+        if (mantissa < (Long.MIN_VALUE + digit) / 10) {
+          overflow = true;
+        } else {
+          mantissa = mantissa * 10 - digit;
+        }
+        if (mantissa != 0) {
+          digits++;
+        }
+        pos++;
+      }
+      if (pos == intStart || (in.getByte(intStart) == '0' && pos - intStart > 1)) {
+        throw error("Invalid number");
+      }
+
+      int exponent = 0;
+      boolean integer = true;
+      if (pos < end && in.getByte(pos) == '.') {
+        integer = false;
+        pos++;
+        int fracStart = pos;
+        while (pos < end && isDigit(in.getByte(pos))) {
+          int digit = in.getByte(pos) - '0';
+          if (digits < 18) {
+            mantissa = mantissa * 10 - digit;
+            exponent--;
+            if (mantissa != 0) {
+              digits++;
+            }
+          } else {
+            overflow = true;
+          }
+          pos++;
+        }
+        if (pos == fracStart) {
+          throw error("Invalid number");
+        }
+      }
+      if (pos < end && (in.getByte(pos) == 'e' || in.getByte(pos) == 'E')) {
+        integer = false;
+        pos++;
+        boolean negativeExponent = false;
+        if (pos < end && (in.getByte(pos) == '+' || in.getByte(pos) == '-')) {
+          negativeExponent = in.getByte(pos) == '-';
+          pos++;
+        }
+        int expStart = pos;
+        int value = 0;
+        while (pos < end && isDigit(in.getByte(pos))) {
+          if (value < 10000) {
+            value = value * 10 + in.getByte(pos) - '0';
+          }
+          pos++;
+        }
+        if (pos == expStart) {
+          throw error("Invalid number");
+        }
+        exponent += negativeExponent ? -value : value;
+      }
+
+      if (integer && !overflow) {
+        if (!negative) {
+          if (mantissa == Long.MIN_VALUE) {
+            // 9223372036854775808 does not fit
+            LE.appendDouble(out, Double.parseDouble(text(start, pos)));
+            return FLOAT;
+          }
+          mantissa = -mantissa;
+        }
+        if (mantissa >= Integer.MIN_VALUE && mantissa <= Integer.MAX_VALUE) {
+          LE.appendInt(out, (int) mantissa);
+          return INT32;
+        }
+        LE.appendLong(out, mantissa);
+        return INT64;
+      }
+
+      double value;
+      if (!overflow && digits <= 15 && exponent >= -22 && exponent <= 22) {
+        // both operands are exact, so the result is correctly rounded
+        value = (double) -mantissa;
+        value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+        if (negative) {
+          value = -value;
+        }
+      } else {
+        value = Double.parseDouble(text(start, pos));
+      }
+      LE.appendDouble(out, value);
+      return FLOAT;
+    }
+
+    private void literal(byte[] literal) {
+      if (!equals(pos, Math.min(end, pos + literal.length), literal)) {
+        throw error("Unexpected character");
+      }
+      pos += literal.length;
+    }
+
+    /**
+     * Skips a quoted string.
+     *
+     * @return the position after the opening '"'
+     */
+    private int quoted() {
+      expect('"');
+      int start = pos;
+      skipString();
+      return start;
+    }
+
+    /**
+     * Skips the rest of a string whose '"' was consumed.
+     *
+     * @return the position of the closing '"'
+     */
+    private int skipString() {
+      while (pos < end) {
+        byte c = in.getByte(pos);
+        if (c == '"') {
+          return pos++;
+        }
+        pos += c == '\\' ? 2 : 1;
+      }
+      throw error("Unterminated string");
+    }
+
+    private long parseLong(int start) {
+      // quoted() leaves the position after the closing '"'
+      return parseLong(start, pos - 1);
+    }
+
+    private long parseLong(int start, int stop) {
+      try {
+        return Long.parseLong(text(start, stop));
+      } catch (NumberFormatException e) {
+        throw error("Invalid integer");
+      }
+    }
+
+    private String text(int start, int stop) {
+      return in.getString(start, stop, StandardCharsets.UTF_8.name());
+    }
+
+    private void appendBytes(ByteBuffer bytes) {
+      int at = out.length();
+      int length = bytes.remaining();
+      if (length > 0) {
+        // grow the buffer, then copy in place
+        out.setByte(at + length - 1, (byte) 0);
+        out.getByteBuf().setBytes(at, bytes);
+      }
+    }
+
+    private int hex(int at) {
+      byte c = in.getByte(at);
+      if (c >= '0' && c <= '9') {
+        return c - '0';
+      }
+      if (c >= 'a' && c <= 'f') {
+        return c - 'a' + 10;
+      }
+      if (c >= 'A' && c <= 'F') {
+        return c - 'A' + 10;
+      }
+      throw error("Invalid hex digit");
+    }
+
+    private boolean equals(int start, int stop, byte[] bytes) {
+      if (stop - start != bytes.length) {
+        return false;
+      }
+      for (int i = 0; i < bytes.length; i++) {
+        if (in.getByte(start + i) != bytes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void skipWhitespace() {
+      while (pos < end) {
+        byte c = in.getByte(pos);
+        if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+          return;
+        }
+        pos++;
+      }
+    }
+
+    byte peek() {
+      if (pos >= end) {
+        throw error("Unexpected end of JSON");
+      }
+      return in.getByte(pos);
+    }
+
+    private byte next() {
+      byte c = peek();
+      pos++;
+      return c;
+    }
+
+    private void expect(char c) {
+      if (next() != c) {
+        pos--;
+        throw error("Expected '" + c + "'");
+      }
+    }
+
+    DecodeException error(String message) {
+      return new DecodeException(message + " at offset " + pos);
+    }
+  }
+
+  private static boolean isDigit(byte c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static void writeDocument(Buffer in, int pos, Buffer out, boolean array, int depth) {
+    if (depth == MAX_DEPTH) {
+      throw new DecodeException("BSON nested too deep");
+    }
+    final int end = pos + LE.getInt(in, pos) - 1;
+    pos += 4;
+
+    LE.appendByte(out, (byte) (array ? '[' : '{'));
+    boolean first = true;
+    while (pos < end) {
+      byte type = LE.getByte(in, pos);
+      int nameEnd = LE.skipCString(in, pos + 1);
+      if (!first) {
+        LE.appendByte(out, (byte) ',');
+      }
+      first = false;
+      if (!array) {
+        writeString(in, pos + 1, nameEnd - 1, out);
+        LE.appendByte(out, (byte) ':');
+      }
+      pos = nameEnd;
+      writeValue(in, type, pos, out, depth);
+      pos += valueLength(in, type, pos);
+    }
+    LE.appendByte(out, (byte) (array ? ']' : '}'));
+  }
+
+  @SuppressWarnings("deprecation")
+  private static void writeValue(Buffer in, byte type, int pos, Buffer out, int depth) {
+    switch (type) {
+      case FLOAT:
+        double d = LE.getDouble(in, pos);
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+          ascii(out, "{\"$numberDouble\":\"");
+          ascii(out, Double.toString(d));
+          ascii(out, "\"}");
+        } else {
+          ascii(out, Double.toString(d));
+        }
+        break;
+      case STRING:
+        writeString(in, pos + 4, pos + 4 + LE.getInt(in, pos) - 1, out);
+        break;
+      case EMBEDDED_DOCUMENT:
+        writeDocument(in, pos, out, false, depth + 1);
+        break;
+      case ARRAY:
+        writeDocument(in, pos, out, true, depth + 1);
+        break;
+      case BINARY:
+        int length = LE.getInt(in, pos);
+        ascii(out, "{\"$binary\":{\"base64\":\"");
+        out.appendBytes(Base64.getEncoder().encode(LE.getBytes(in, pos + 5, length)));
+        ascii(out, "\",\"subType\":\"");
+        writeHex(out, LE.getByte(in, pos + 4));
+        ascii(out, "\"}}");
+        break;
+      case UNDEFINED:
+        ascii(out, "{\"$undefined\":true}");
+        break;
+      case OBJECT_ID:
+        ascii(out, "{\"$oid\":\"");
+        for (int i = 0; i < 12; i++) {
+          writeHex(out, LE.getByte(in, pos + i));
+        }
+        ascii(out, "\"}");
+        break;
+      case BOOLEAN:
+        ascii(out, LE.getBoolean(in, pos) ? "true" : "false");
+        break;
+      case UTC_DATETIME:
+        long millis = LE.getLong(in, pos);
+        // relaxed mode uses the ISO form for the years 1970 to 9999
+        if (millis >= 0 && millis < 253402300800000L) {
+          ascii(out, "{\"$date\":\"");
+          ISODate.append(out, millis);
+          ascii(out, "\"}");
+        } else {
+          ascii(out, "{\"$date\":{\"$numberLong\":\"");
+          writeLong(out, millis);
+          ascii(out, "\"}}");
+        }
+        break;
+      case NULL:
+        ascii(out, "null");
+        break;
+      case REGEX:
+        int optionsStart = LE.skipCString(in, pos);
+        ascii(out, "{\"$regularExpression\":{\"pattern\":");
+        writeString(in, pos, optionsStart - 1, out);
+        ascii(out, ",\"options\":");
+        writeString(in, optionsStart, LE.skipCString(in, optionsStart) - 1, out);
+        ascii(out, "}}");
+        break;
+      case JSCODE:
+        ascii(out, "{\"$code\":");
+        writeString(in, pos + 4, pos + 4 + LE.getInt(in, pos) - 1, out);
+        ascii(out, "}");
+        break;
+      case SYMBOL:
+        ascii(out, "{\"$symbol\":");
+        writeString(in, pos + 4, pos + 4 + LE.getInt(in, pos) - 1, out);
+        ascii(out, "}");
+        break;
+      case INT32:
+        writeLong(out, LE.getInt(in, pos));
+        break;
+      case TIMESTAMP:
+        long timestamp = LE.getLong(in, pos);
+        ascii(out, "{\"$timestamp\":{\"t\":");
+        writeLong(out, timestamp >>> 32);
+        ascii(out, ",\"i\":");
+        writeLong(out, timestamp & 0xffffffffL);
+        ascii(out, "}}");
+        break;
+      case INT64:
+        long l = LE.getLong(in, pos);
+        if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+          // as a plain number it would read back as a 32 bit integer
+          ascii(out, "{\"$numberLong\":\"");
+          writeLong(out, l);
+          ascii(out, "\"}");
+        } else {
+          writeLong(out, l);
+        }
+        break;
+      case DECIMAL128:
+        ascii(out, "{\"$numberDecimal\":\"");
+        ascii(out, new Decimal128(in, pos).toString());
+        ascii(out, "\"}");
+        break;
+      case MINKEY:
+        ascii(out, "{\"$minKey\":1}");
+        break;
+      case MAXKEY:
+        ascii(out, "{\"$maxKey\":1}");
+        break;
+      case DBPOINTER:
+        int namespaceLength = LE.getInt(in, pos);
+        ascii(out, "{\"$dbPointer\":{\"$ref\":");
+        writeString(in, pos + 4, pos + 4 + namespaceLength - 1, out);
+        ascii(out, ",\"$id\":{\"$oid\":\"");
+        for (int i = 0; i < 12; i++) {
+          writeHex(out, LE.getByte(in, pos + 4 + namespaceLength + i));
+        }
+        ascii(out, "\"}}}");
+        break;
+      case JSCODE_WS:
+        int codeLength = LE.getInt(in, pos + 4);
+        ascii(out, "{\"$code\":");
+        writeString(in, pos + 8, pos + 8 + codeLength - 1, out);
+        ascii(out, ",\"$scope\":");
+        writeDocument(in, pos + 8 + codeLength, out, false, depth + 1);
+        ascii(out, "}");
+        break;
+      default:
+        throw new DecodeException("Unknown BSON type: " + type);
+    }
+  }
+
+  /**
+   * Writes the UTF-8 bytes between start and end as a quoted JSON string, runs without escapes are copied as is.
+   */
+  private static void writeString(Buffer in, int start, int end, Buffer out) {
+    LE.appendByte(out, (byte) '"');
+    int run = start;
+    for (int i = start; i < end; i++) {
+      byte c = LE.getByte(in, i);
+      if (c == '"' || c == '\\' || (c >= 0 && c < 0x20)) {
+        out.appendBuffer(in, run, i - run);
+        run = i + 1;
+        switch (c) {
+          case '"':
+            ascii(out, "\\\"");
+            break;
+          case '\\':
+            ascii(out, "\\\\");
+            break;
+          case '\n':
+            ascii(out, "\\n");
+            break;
+          case '\r':
+            ascii(out, "\\r");
+            break;
+          case '\t':
+            ascii(out, "\\t");
+            break;
+          default:
+            ascii(out, "\\u00");
+            writeHex(out, c);
+        }
+      }
+    }
+    out.appendBuffer(in, run, end - run);
+    LE.appendByte(out, (byte) '"');
+  }
+
+  /**
+   * Writes the decimal digits of the value.
+   */
+  private static void writeLong(Buffer out, long value) {
+    if (value == Long.MIN_VALUE) {
+      ascii(out, "-9223372036854775808");
+      return;
+    }
+    if (value < 0) {
+      LE.appendByte(out, (byte) '-');
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value; v >= 10; v /= 10) {
+      digits++;
+    }
+    // grow the buffer once and set the digits in place, last digit first
+    int pos = out.length();
+    for (int i = pos + digits - 1; i >= pos; i--) {
+      out.setByte(i, (byte) ('0' + value % 10));
+      value /= 10;
+    }
+  }
+
+  private static void writeHex(Buffer out, byte b) {
+    LE.appendByte(out, HEX[(b >> 4) & 0x0f]);
+    LE.appendByte(out, HEX[b & 0x0f]);
+  }
+
+  private static void ascii(Buffer out, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      LE.appendByte(out, (byte) value.charAt(i));
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,42 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonArray;
+
+/**
+ * Codec that sends {@link JsonArray} as BSON instead of JSON text, the array is encoded as a document whose keys are
+ * the indexes. Values are decoded as by {@link JsonObjectBSONMessageCodec}. Like it, the codec must be selected per
+ * message with {@code new DeliveryOptions().setCodecName("JsonArrayBSON")}.
+ */
+public class JsonArrayBSONMessageCodec implements MessageCodec<JsonArray, JsonArray> {
+
+  @Override
+  public void encodeToWire(Buffer buffer, JsonArray json) {
+    BSONMessageCodec.encode(buffer, json.getList());
+  }
+
+  @Override
+  public JsonArray decodeFromWire(int i, Buffer buffer) {
+    if (buffer == null) {
+      return null;
+    }
+
+    return new JsonArray(JsonObjectBSONMessageCodec.decodeList(buffer, i));
+  }
+
+  @Override
+  public JsonArray transform(JsonArray json) {
+    return json == null ? null : json.copy();
+  }
+
+  @Override
+  public String name() {
+    return "JsonArrayBSON";
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
@@ -0,0 +1,156 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.FieldNameCache;
+import com.jetdrone.vertx.codec.bson.impl.ISODate;
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.*;
+
+/**
+ * Codec that sends {@link JsonObject} as BSON instead of JSON text, handlers written against the Vert.x JSON types
+ * receive the same {@link JsonObject} as before. The event bus always picks its built in codec for {@link JsonObject},
+ * even over a default codec, so the codec is registered by name and selected per message:
+ * <pre>
+ * eb.registerCodec(new JsonObjectBSONMessageCodec());
+ * eb.send("address", json, new DeliveryOptions().setCodecName("JsonObjectBSON"));
+ * </pre>
+ * The backing map of the object is encoded directly and the wire buffer is decoded straight into the maps and lists
+ * a {@link JsonObject} holds. BSON types JSON does not have, sent by other producers, are decoded into their Extended
+ * JSON form (e.g. <code>{"$oid": "..."}</code>), binary data into a base64 string like {@link JsonObject#put(String,
+ * byte[])} does.
+ */
+public class JsonObjectBSONMessageCodec implements MessageCodec<JsonObject, JsonObject> {
+
+  @Override
+  public void encodeToWire(Buffer buffer, JsonObject json) {
+    BSONMessageCodec.encode(buffer, json.getMap());
+  }
+
+  @Override
+  public JsonObject decodeFromWire(int i, Buffer buffer) {
+    if (buffer == null) {
+      return null;
+    }
+
+    return new JsonObject(decodeDocument(buffer, i));
+  }
+
+  @Override
+  public JsonObject transform(JsonObject json) {
+    return json == null ? null : json.copy();
+  }
+
+  @Override
+  public String name() {
+    return "JsonObjectBSON";
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+
+  @SuppressWarnings("deprecation")
+  static Map<String, Object> decodeDocument(Buffer buffer, int pos) {
+    // skip the last 0x00
+    int length = pos + LE.getInt(buffer, pos) - 1;
+    pos += 4;
+
+    Map<String, Object> map = new LinkedHashMap<>();
+
+    while (pos < length) {
+      byte type = LE.getByte(buffer, pos);
+      pos++;
+      int end = LE.skipCString(buffer, pos);
+      String key = FieldNameCache.decode(buffer, pos, end - pos - 1);
+      pos = end;
+
+      // undefined has no meaning in Java, so treat it as a NO-OP
+      if (type != UNDEFINED) {
+        map.put(key, decodeValue(buffer, type, pos));
+      }
+      pos += valueLength(buffer, type, pos);
+    }
+
+    return map;
+  }
+
+  @SuppressWarnings("deprecation")
+  static List<Object> decodeList(Buffer buffer, int pos) {
+    // skip the last 0x00
+    int length = pos + LE.getInt(buffer, pos) - 1;
+    pos += 4;
+
+    List<Object> list = new ArrayList<>();
+
+    while (pos < length) {
+      byte type = LE.getByte(buffer, pos);
+      pos = LE.skipCString(buffer, pos + 1);
+
+      if (type != UNDEFINED) {
+        list.add(decodeValue(buffer, type, pos));
+      }
+      pos += valueLength(buffer, type, pos);
+    }
+
+    return list;
+  }
+
+  private static Object decodeValue(Buffer buffer, byte type, int pos) {
+    switch (type) {
+      case EMBEDDED_DOCUMENT:
+        return decodeDocument(buffer, pos);
+      case ARRAY:
+        return decodeList(buffer, pos);
+      case BINARY:
+        // all subtypes, as JsonObject stores binary data
+        int binLen = LE.getInt(buffer, pos);
+        return Base64.getEncoder().encodeToString(LE.getBytes(buffer, pos + 5, binLen));
+      case OBJECT_ID:
+        return wrap("$oid", new ObjectId(buffer, pos).toString());
+      case UTC_DATETIME:
+        long millis = LE.getLong(buffer, pos);
+        // relaxed Extended JSON uses the ISO form for the years 1970 to 9999
+        if (millis >= 0 && millis < 253402300800000L) {
+          return wrap("$date", ISODate.format(millis));
+        }
+        return wrap("$date", wrap("$numberLong", Long.toString(millis)));
+      case REGEX:
+        int optionsPos = LE.skipCString(buffer, pos);
+        Map<String, Object> regex = new LinkedHashMap<>();
+        regex.put("pattern", LE.getCString(buffer, pos));
+        regex.put("options", LE.getCString(buffer, optionsPos));
+        return wrap("$regularExpression", regex);
+      case TIMESTAMP:
+        long timestamp = LE.getLong(buffer, pos);
+        Map<String, Object> ts = new LinkedHashMap<>();
+        ts.put("t", timestamp >>> 32);
+        ts.put("i", timestamp & 0xffffffffL);
+        return wrap("$timestamp", ts);
+      case DECIMAL128:
+        return wrap("$numberDecimal", new Decimal128(buffer, pos).toString());
+      case MINKEY:
+        return wrap("$minKey", 1);
+      case MAXKEY:
+        return wrap("$maxKey", 1);
+      default:
+        // the JSON types
+        return BSONMessageCodec.decodeValue(buffer, type, pos);
+    }
+  }
+
+  private static Map<String, Object> wrap(String key, Object value) {
+    // mutable, as the rest of a decoded JsonObject
+    return new LinkedHashMap<>(Collections.singletonMap(key, value));
+  }
+}
@@ -0,0 +1,243 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A file of concatenated BSON documents (e.g. a mongodump {@code .bson} file) accessed through memory mapped segments.
+ * <p>
+ * Iterating returns each document as a {@link Buffer} view over the mapped memory, nothing is copied to the heap, the
+ * view can be decoded with {@link BSONMessageCodec#decodeFromWire(int, Buffer)} or wrapped in a
+ * {@link RawBSONDocument}. A view is only valid while the file is open.
+ * <p>
+ * Files opened with {@link #append(Path)} are extended one segment at a time and documents are encoded straight into
+ * the mapped memory, the file is truncated to the written size on {@link #close()}. A file that was not closed, e.g.
+ * after a crash, ends with the zero filled rest of its last segment: a zero length prefix marks the end of the
+ * documents, and reopening for append scans the length prefixes to find it. Instances are not thread safe.
+ */
+public final class MappedBSONFile implements Iterable<Buffer>, Closeable {
+
+  /**
+   * Default size of a mapped segment, 64MB.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  private final FileChannel channel;
+  private final boolean writable;
+  private final int segmentSize;
+
+  // size of the complete documents in the file
+  private long size;
+
+  private MappedByteBuffer writeSegment;
+  private long writeSegmentStart;
+
+  private MappedBSONFile(FileChannel channel, boolean writable, int segmentSize) throws IOException {
+    this.channel = channel;
+    this.writable = writable;
+    this.segmentSize = segmentSize;
+    this.size = channel.size();
+    if (writable) {
+      // appending after the zeros of an unclosed file would hide the new documents
+      this.size = logicalEnd();
+    }
+  }
+
+  private long logicalEnd() {
+    DocumentIterator documents = new DocumentIterator(size);
+    while (documents.hasNext()) {
+      documents.next();
+    }
+    return documents.offset;
+  }
+
+  /**
+   * Opens a file for reading.
+   */
+  public static MappedBSONFile open(Path file) throws IOException {
+    return open(file, DEFAULT_SEGMENT_SIZE);
+  }
+
+  public static MappedBSONFile open(Path file, int segmentSize) throws IOException {
+    return new MappedBSONFile(FileChannel.open(file, StandardOpenOption.READ), false, segmentSize);
+  }
+
+  /**
+   * Opens a file for reading and appending, the file is created if it does not exist.
+   */
+  public static MappedBSONFile append(Path file) throws IOException {
+    return append(file, DEFAULT_SEGMENT_SIZE);
+  }
+
+  public static MappedBSONFile append(Path file, int segmentSize) throws IOException {
+    return new MappedBSONFile(
+        FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE),
+        true,
+        segmentSize);
+  }
+
+  /**
+   * @return the number of bytes of documents in the file, for files opened for reading the size of the file
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Iterates over the documents present when the iterator is created.
+   */
+  @Override
+  public Iterator<Buffer> iterator() {
+    return new DocumentIterator(size);
+  }
+
+  /**
+   * Appends an already encoded document.
+   */
+  public void append(Buffer document) throws IOException {
+    int length = document.length();
+    if (length < 5 || LE.getInt(document, 0) != length) {
+      throw new IllegalArgumentException("Buffer does not contain a single BSON document");
+    }
+
+    ByteBuffer region = writeRegion(length);
+    region.put(document.getByteBuf().nioBuffer());
+    size += length;
+  }
+
+  /**
+   * Encodes a document straight into the mapped memory.
+   */
+  public void append(BSONDocument document) throws IOException {
+    int length = BSONMessageCodec.encodedSize(document);
+
+    // the region can not grow, so the encoder writes in place
+    ByteBuf region = Unpooled.wrappedBuffer(writeRegion(length)).clear();
+    BSON.encodeToWire(Buffer.buffer(region), document);
+    size += length;
+  }
+
+  /**
+   * Forces the appended documents to the storage device.
+   */
+  public void flush() throws IOException {
+    if (writeSegment != null) {
+      writeSegment.force();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (writable) {
+        flush();
+        writeSegment = null;
+        // drop the unused part of the last segment
+        channel.truncate(size);
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * @return a region of exactly length bytes at the end of the file
+   */
+  private ByteBuffer writeRegion(int length) throws IOException {
+    if (!writable) {
+      throw new IllegalStateException("File not opened for append");
+    }
+
+    if (writeSegment == null || size + length > writeSegmentStart + writeSegment.capacity()) {
+      writeSegmentStart = size;
+      writeSegment = channel.map(FileChannel.MapMode.READ_WRITE, size, Math.max(segmentSize, length));
+    }
+
+    ByteBuffer region = writeSegment.duplicate();
+    region.position((int) (size - writeSegmentStart));
+    region.limit(region.position() + length);
+    return region.slice();
+  }
+
+  private final class DocumentIterator implements Iterator<Buffer> {
+
+    private long limit;
+    private long offset;
+
+    private Buffer segment;
+    private long segmentStart;
+
+    DocumentIterator(long limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (offset < limit && limit - offset >= 4 && prefix() == 0) {
+        // the zero filled tail of a file that was not closed
+        limit = offset;
+      }
+      return offset < limit;
+    }
+
+    @Override
+    public Buffer next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      if (limit - offset < 4) {
+        throw new DecodeException("Truncated BSON document at offset " + offset);
+      }
+
+      try {
+        int length = prefix();
+        if (length < 5 || offset + length > limit) {
+          throw new DecodeException("Invalid BSON document at offset " + offset);
+        }
+        if (offset + length > segmentStart + segment.length()) {
+          // the document crosses the segment end, the next segment starts with it
+          map(length);
+        }
+
+        int pos = (int) (offset - segmentStart);
+        offset += length;
+        return segment.slice(pos, pos + length);
+      } catch (IOException e) {
+        throw new DecodeException(e.getMessage());
+      }
+    }
+
+    private int prefix() {
+      if (segment == null || offset + 4 > segmentStart + segment.length()) {
+        try {
+          map(4);
+        } catch (IOException e) {
+          throw new DecodeException(e.getMessage());
+        }
+      }
+      return LE.getInt(segment, (int) (offset - segmentStart));
+    }
+
+    private void map(int minSize) throws IOException {
+      long length = Math.min(Math.max(segmentSize, minSize), limit - offset);
+      segmentStart = offset;
+      segment = Buffer.buffer(Unpooled.wrappedBuffer(channel.map(FileChannel.MapMode.READ_ONLY, offset, length)));
+    }
+  }
+}
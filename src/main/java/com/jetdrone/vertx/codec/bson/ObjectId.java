@@ -1,228 +1,270 @@
 package com.jetdrone.vertx.codec.bson;
 
-import java.lang.management.ManagementFactory;
-import java.net.InetAddress;
-import java.security.MessageDigest;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A 12 byte MongoDB ObjectId: 4 bytes seconds since the epoch, 5 bytes identifying the process (see
+ * {@link ObjectIdIdentity}) and a 3 byte counter, all big endian.
+ * <p>
+ * The value is held in two primitive fields, the timestamp and the remaining 8 bytes as a long, so equality, hashing
+ * and ordering are a couple of comparisons. Generation is lock free, the counter is shared by all threads.
+ */
+public final class ObjectId implements Comparable<ObjectId> {
 
-public final class ObjectId {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  // hex digit value of the ASCII characters, -1 for everything else
+  private static final byte[] HEX_VALUES = new byte[128];
 
-  private static final byte[] MACHINE = new byte[3];
-  private static final int PID;
-  private static int counter = 0;
+  // low bits of an identity in place are always 0
+  private static final long UNRESOLVED = -1;
 
-  private final byte[] oid = new byte[12];
+  // the process identity, already in place for the low 8 bytes, resolved on first use
+  private static volatile long identity = UNRESOLVED;
+  private static final AtomicInteger COUNTER = new AtomicInteger(ThreadLocalRandom.current().nextInt());
+
+  private final int timestamp;
+  // identity (5 bytes) and counter (3 bytes)
+  private final long rest;
 
   static {
-    String hostname;
-    try {
-      hostname = InetAddress.getLocalHost().getHostName();
-    } catch (Exception e) {
-      hostname = "localhost";
-    }
-    try {
-      MessageDigest md = MessageDigest.getInstance("MD5");
-      byte[] machine = md.digest(hostname.getBytes());
-      ObjectId.MACHINE[0] = machine[0];
-      ObjectId.MACHINE[1] = machine[1];
-      ObjectId.MACHINE[2] = machine[2];
-    } catch (Exception e) {
-      ObjectId.MACHINE[0] = (byte) (Math.random() * 255);
-      ObjectId.MACHINE[1] = (byte) (Math.random() * 255);
-      ObjectId.MACHINE[2] = (byte) (Math.random() * 255);
-    }
-
-    int pid;
-    try {
-      String nameOfRunningVM = ManagementFactory.getRuntimeMXBean().getName();
-      int p = nameOfRunningVM.indexOf('@');
-      pid = Integer.parseInt(nameOfRunningVM.substring(0, p));
-    } catch (Exception e) {
-      pid = (int) (Math.random() * 0x00ffffff);
-    }
-
-    PID = pid;
-  }
-
-  private static byte charToByte(char ch) {
-    switch (ch) {
-      case '0':
-        return 0x00;
-      case '1':
-        return 0x01;
-      case '2':
-        return 0x02;
-      case '3':
-        return 0x03;
-      case '4':
-        return 0x04;
-      case '5':
-        return 0x05;
-      case '6':
-        return 0x06;
-      case '7':
-        return 0x07;
-      case '8':
-        return 0x08;
-      case '9':
-        return 0x09;
-      case 'a':
-      case 'A':
-        return 0x0a;
-      case 'b':
-      case 'B':
-        return 0x0b;
-      case 'c':
-      case 'C':
-        return 0x0c;
-      case 'd':
-      case 'D':
-        return 0x0d;
-      case 'e':
-      case 'E':
-        return 0x0e;
-      case 'f':
-      case 'F':
-        return 0x0f;
-    }
-    throw new RuntimeException("Invalid Hex character: " + ch);
-  }
-
-  private static char intToChar(int ch) {
-    switch (ch) {
-      case 0x00:
-        return '0';
-      case 0x01:
-        return '1';
-      case 0x02:
-        return '2';
-      case 0x03:
-        return '3';
-      case 0x04:
-        return '4';
-      case 0x05:
-        return '5';
-      case 0x06:
-        return '6';
-      case 0x07:
-        return '7';
-      case 0x08:
-        return '8';
-      case 0x09:
-        return '9';
-      case 0x0a:
-        return 'a';
-      case 0x0b:
-        return 'b';
-      case 0x0c:
-        return 'c';
-      case 0x0d:
-        return 'd';
-      case 0x0e:
-        return 'e';
-      case 0x0f:
-        return 'f';
-    }
-    throw new RuntimeException("Invalid Hex character: " + ch);
-  }
-
-  private static byte hexToByte(char ch0, char ch1) {
-    return (byte) ((charToByte(ch0) & 0xff) << 4 | (charToByte(ch1) & 0xff));
+    Arrays.fill(HEX_VALUES, (byte) -1);
+    for (int i = 0; i < 10; i++) {
+      HEX_VALUES['0' + i] = (byte) i;
+    }
+    for (int i = 0; i < 6; i++) {
+      HEX_VALUES['a' + i] = (byte) (10 + i);
+      HEX_VALUES['A' + i] = (byte) (10 + i);
+    }
   }
 
   public ObjectId() {
-    this((int) (System.currentTimeMillis() / 1000), counter++);
+    this(now(), identity() | (COUNTER.getAndIncrement() & 0xffffff));
   }
 
-  private ObjectId(int timestamp, int increment) {
-    oid[0] = (byte) ((timestamp >> 24) & 0xff);
-    oid[1] = (byte) ((timestamp >> 16) & 0xff);
-    oid[2] = (byte) ((timestamp >> 8) & 0xff);
-    oid[3] = (byte) (timestamp & 0xff);
-    oid[4] = MACHINE[0];
-    oid[5] = MACHINE[1];
-    oid[6] = MACHINE[2];
-    oid[7] = (byte) ((PID >> 8) & 0xff);
-    oid[8] = (byte) (PID & 0xff);
-    oid[9] = (byte) ((increment >> 16) & 0xff);
-    oid[10] = (byte) ((increment >> 8) & 0xff);
-    oid[11] = (byte) (increment & 0xff);
+  /**
+   * Creates an id from its two halves, as filled by {@link #generate(int[], long[], int, int)}.
+   *
+   * @param timestamp the first 4 bytes
+   * @param rest the last 8 bytes
+   */
+  public ObjectId(int timestamp, long rest) {
+    this.timestamp = timestamp;
+    this.rest = rest;
   }
 
   public ObjectId(String hex) {
-    for (int i = 0; i < 12; i++) {
-      oid[i] = hexToByte(hex.charAt(i * 2), hex.charAt(i * 2 + 1));
+    if (hex.length() != 24) {
+      throw new IllegalArgumentException("Invalid ObjectId: " + hex);
+    }
+    timestamp = (int) parseHex(hex, 0, 8);
+    rest = parseHex(hex, 8, 24);
+  }
+
+  public ObjectId(byte[] bytes) {
+    int timestamp = 0;
+    for (int i = 0; i < 4; i++) {
+      timestamp = timestamp << 8 | (bytes[i] & 0xff);
+    }
+    long rest = 0;
+    for (int i = 4; i < 12; i++) {
+      rest = rest << 8 | (bytes[i] & 0xff);
+    }
+    this.timestamp = timestamp;
+    this.rest = rest;
+  }
+
+  /**
+   * Reads the 12 bytes starting at pos.
+   */
+  public ObjectId(Buffer buffer, int pos) {
+    timestamp = buffer.getInt(pos);
+    rest = buffer.getLong(pos + 4);
+  }
+
+  /**
+   * Appends count new ids, 12 bytes each, e.g. for a batch of inserts. The clock is read once, the counter range is
+   * reserved with a single atomic update and no ObjectId is allocated.
+   */
+  public static void generate(Buffer buffer, int count) {
+    checkCount(count);
+    if (count == 0) {
+      return;
+    }
+    final int timestamp = now();
+    final long identity = identity();
+    final int counter = COUNTER.getAndAdd(count);
+
+    int pos = buffer.length();
+    // grow the buffer once, the ids are then set in place
+    buffer.setByte(pos + 12 * count - 1, (byte) 0);
+    for (int i = 0; i < count; i++, pos += 12) {
+      buffer.setInt(pos, timestamp);
+      buffer.setLong(pos + 4, identity | ((counter + i) & 0xffffff));
     }
   }
 
-  public ObjectId(byte[] hex) {
-    System.arraycopy(hex, 0, oid, 0, 12);
+  /**
+   * Stores the halves of count new ids from offset on, like {@link #generate(Buffer, int)}. An id is created from them
+   * with {@link #ObjectId(int, long)}.
+   */
+  public static void generate(int[] timestamps, long[] rest, int offset, int count) {
+    checkCount(count);
+    if (count == 0) {
+      return;
+    }
+    final int timestamp = now();
+    final long identity = identity();
+    final int counter = COUNTER.getAndAdd(count);
+
+    for (int i = 0; i < count; i++) {
+      timestamps[offset + i] = timestamp;
+      rest[offset + i] = identity | ((counter + i) & 0xffffff);
+    }
+  }
+
+  /**
+   * Sets the identity of the ids generated from now on, replacing the configured one.
+   */
+  public static void setIdentity(ObjectIdIdentity strategy) {
+    long value = place(strategy.value());
+    synchronized (ObjectId.class) {
+      identity = value;
+    }
+  }
+
+  private static long identity() {
+    long value = identity;
+    if (value == UNRESOLVED) {
+      synchronized (ObjectId.class) {
+        value = identity;
+        if (value == UNRESOLVED) {
+          value = place(ObjectIdIdentity.configured().value());
+          identity = value;
+        }
+      }
+    }
+    return value;
+  }
+
+  private static int now() {
+    return (int) (System.currentTimeMillis() / 1000);
+  }
+
+  private static void checkCount(int count) {
+    // a larger range would wrap the 3 byte counter within the same second
+    if (count < 0 || count > 0x1000000) {
+      throw new IllegalArgumentException("Invalid number of ids: " + count);
+    }
+  }
+
+  private static long place(long value) {
+    if (value < 0 || value > 0xffffffffffL) {
+      throw new IllegalArgumentException("ObjectId identity must fit in 5 bytes: " + value);
+    }
+    return value << 24;
+  }
+
+  private static long parseHex(String hex, int from, int to) {
+    long value = 0;
+    for (int i = from; i < to; i++) {
+      char ch = hex.charAt(i);
+      int digit = ch < 128 ? HEX_VALUES[ch] : -1;
+      if (digit < 0) {
+        throw new IllegalArgumentException("Invalid Hex character: " + ch);
+      }
+      value = value << 4 | digit;
+    }
+    return value;
   }
 
   public int getTimestamp() {
-    return oid[0] << 24 | (oid[1] & 0xff) << 16 | (oid[2] & 0xff) << 8 | (oid[3] & 0xff);
+    return timestamp;
   }
 
   public Date getDate() {
-    return new Date(getTimestamp() * 1000l);
+    return new Date(timestamp * 1000l);
   }
 
+  /**
+   * @return the first 3 bytes of the identity, the machine for ids with the legacy layout
+   */
   public byte[] getMachine() {
-    byte[] machine = new byte[3];
-    System.arraycopy(oid, 4, machine, 0, 3);
-    return machine;
+    return new byte[]{(byte) (rest >>> 56), (byte) (rest >>> 48), (byte) (rest >>> 40)};
   }
 
+  /**
+   * @return the last 2 bytes of the identity, the process id for ids with the legacy layout
+   */
   public int getPid() {
-    return (oid[7] & 0xff) << 8 | (oid[8] & 0xff);
+    return (int) (rest >>> 24) & 0xffff;
   }
 
   public int getIncrement() {
-    return (oid[9] & 0xff) << 16 | (oid[10] & 0xff) << 8 | (oid[11] & 0xff);
+    return (int) rest & 0xffffff;
   }
 
+  /**
+   * @return a new array with the 12 bytes of the id
+   */
   public byte[] getBytes() {
-    return oid;
+    byte[] bytes = new byte[12];
+    for (int i = 0; i < 4; i++) {
+      bytes[i] = (byte) (timestamp >>> (24 - 8 * i));
+    }
+    for (int i = 0; i < 8; i++) {
+      bytes[4 + i] = (byte) (rest >>> (56 - 8 * i));
+    }
+    return bytes;
+  }
+
+  /**
+   * Appends the 12 bytes of the id.
+   */
+  public void writeTo(Buffer buffer) {
+    // both are big endian, as the buffer
+    buffer.appendInt(timestamp);
+    buffer.appendLong(rest);
   }
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    for (int i = 0; i < 12; i++) {
-      result = prime * result + oid[i];
-    }
-    return result;
+    return 31 * timestamp + Long.hashCode(rest);
   }
 
   @Override
   public boolean equals(Object obj) {
-    if (obj == null)
-      return false;
     if (obj == this)
       return true;
-    if (obj.getClass() != getClass())
+    if (!(obj instanceof ObjectId))
       return false;
 
     ObjectId rhs = (ObjectId) obj;
+    return timestamp == rhs.timestamp && rest == rhs.rest;
+  }
 
-    for (int i = 0; i < 12; i++) {
-      if (oid[i] != rhs.oid[i]) {
-        return false;
-      }
-    }
-
-    return true;
+  /**
+   * Orders ids as their bytes, i.e. by creation time first.
+   */
+  @Override
+  public int compareTo(ObjectId other) {
+    int result = Integer.compareUnsigned(timestamp, other.timestamp);
+    return result != 0 ? result : Long.compareUnsigned(rest, other.rest);
   }
 
   @Override
   public String toString() {
-    StringBuilder sb = new StringBuilder();
-    for (int i = 0; i < 12; i++) {
-      sb.append(intToChar((oid[i] >> 4) & 0x0f));
-      sb.append(intToChar(oid[i] & 0x0f));
+    char[] chars = new char[24];
+    for (int i = 0; i < 8; i++) {
+      chars[i] = HEX[(timestamp >>> (28 - 4 * i)) & 0x0f];
     }
-
-    return sb.toString();
+    for (int i = 0; i < 16; i++) {
+      chars[8 + i] = HEX[(int) (rest >>> (60 - 4 * i)) & 0x0f];
+    }
+    return new String(chars);
   }
 }
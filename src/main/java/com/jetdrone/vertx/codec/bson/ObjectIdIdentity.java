@@ -0,0 +1,115 @@
+package com.jetdrone.vertx.codec.bson;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Strategy for the 5 bytes that follow the timestamp in the ids generated by this process, set with
+ * {@link ObjectId#setIdentity(ObjectIdIdentity)}.
+ * <p>
+ * When none is set, the strategy is read from the system property {@value #PROPERTY} or else the environment variable
+ * {@value #ENV}: {@code random}, {@code legacy} or the value itself as 10 hex digits. The default is {@link #random()}.
+ * The identity is resolved when the first id is generated, not when the class is loaded.
+ */
+@FunctionalInterface
+public interface ObjectIdIdentity {
+
+  String PROPERTY = "vertx.bson.objectid.identity";
+  String ENV = "VERTX_BSON_OBJECTID_IDENTITY";
+
+  /**
+   * @return the identity in the low 40 bits
+   */
+  long value();
+
+  /**
+   * A random value per process, as in the current ObjectId specification. Reads the non blocking system source.
+   */
+  static ObjectIdIdentity random() {
+    return () -> {
+      byte[] bytes = new byte[5];
+      new SecureRandom().nextBytes(bytes);
+      long value = 0;
+      for (byte b : bytes) {
+        value = value << 8 | (b & 0xff);
+      }
+      return value;
+    };
+  }
+
+  /**
+   * A fixed value, e.g. assigned to each node by the deployment.
+   */
+  static ObjectIdIdentity of(long value) {
+    if (value < 0 || value > 0xffffffffffL) {
+      throw new IllegalArgumentException("ObjectId identity must fit in 5 bytes: " + value);
+    }
+    return () -> value;
+  }
+
+  /**
+   * A fixed value given as 10 hex digits.
+   */
+  static ObjectIdIdentity of(String hex) {
+    if (hex.length() != 10) {
+      throw new IllegalArgumentException("ObjectId identity must be 10 hex digits: " + hex);
+    }
+    try {
+      return of(Long.parseLong(hex, 16));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("ObjectId identity must be 10 hex digits: " + hex);
+    }
+  }
+
+  /**
+   * The original layout: 3 bytes of the MD5 of the host name and the 2 low bytes of the process id. Resolving the host
+   * name can block for as long as the DNS lookup takes.
+   */
+  static ObjectIdIdentity legacy() {
+    return () -> {
+      String hostname;
+      try {
+        hostname = InetAddress.getLocalHost().getHostName();
+      } catch (Exception e) {
+        hostname = "localhost";
+      }
+      long machine;
+      try {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(hostname.getBytes());
+        machine = (digest[0] & 0xff) << 16 | (digest[1] & 0xff) << 8 | (digest[2] & 0xff);
+      } catch (Exception e) {
+        machine = (long) (Math.random() * 0x00ffffff);
+      }
+
+      int pid;
+      try {
+        String nameOfRunningVM = ManagementFactory.getRuntimeMXBean().getName();
+        int p = nameOfRunningVM.indexOf('@');
+        pid = Integer.parseInt(nameOfRunningVM.substring(0, p));
+      } catch (Exception e) {
+        pid = (int) (Math.random() * 0x00ffffff);
+      }
+
+      return machine << 16 | (pid & 0xffff);
+    };
+  }
+
+  /**
+   * @return the strategy named by {@value #PROPERTY} or {@value #ENV}, {@link #random()} when neither is set
+   */
+  static ObjectIdIdentity configured() {
+    String config = System.getProperty(PROPERTY);
+    if (config == null) {
+      config = System.getenv(ENV);
+    }
+    if (config == null || "random".equals(config)) {
+      return random();
+    }
+    if ("legacy".equals(config)) {
+      return legacy();
+    }
+    return of(config);
+  }
+}
@@ -0,0 +1,60 @@
+package com.jetdrone.vertx.codec.bson;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tree of the field paths selected for decoding, see {@link BSONCodecOptions#setProjection(Collection)}.
+ * <p>
+ * A compiled projection is immutable and can be shared, callers decoding the same fields on every message should
+ * compile it once and pass it to {@link BSONMessageCodec#decodeFromWire(int, io.vertx.core.buffer.Buffer, Projection)}.
+ */
+public final class Projection {
+
+  /**
+   * Selects the whole subtree.
+   */
+  static final Projection ALL = new Projection();
+
+  private final Map<String, Projection> fields = new HashMap<>();
+
+  private Projection() {
+  }
+
+  /**
+   * @return the projection of the dotted paths, null when paths is null
+   */
+  public static Projection compile(Collection<String> paths) {
+    if (paths == null) {
+      return null;
+    }
+
+    Projection root = new Projection();
+    for (String path : paths) {
+      String[] names = path.split("\\.");
+      Projection projection = root;
+      for (int i = 0; i < names.length && projection != ALL; i++) {
+        if (i == names.length - 1) {
+          // a shorter path wins over a longer one
+          projection.fields.put(names[i], ALL);
+        } else {
+          Projection child = projection.fields.get(names[i]);
+          if (child == null) {
+            child = new Projection();
+            projection.fields.put(names[i], child);
+          }
+          projection = child;
+        }
+      }
+    }
+    return root;
+  }
+
+  /**
+   * @return the projection of the field, null when the field is not selected
+   */
+  Projection get(String field) {
+    return fields.get(field);
+  }
+}
@@ -0,0 +1,233 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.FieldNameCache;
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.*;
+
+/**
+ * Read only Map view over an encoded BSON document.
+ * <p>
+ * No field is decoded until it is accessed, embedded documents and arrays are returned as lazy views over the same
+ * bytes, so the cost of reading a document is proportional to the fields touched and not to its size. Values are not
+ * cached, every call to {@link #get(Object)} decodes the field again.
+ * <p>
+ * The document keeps a reference to the backing buffer, so the buffer must not be modified while the document is in
+ * use.
+ */
+public final class RawBSONDocument extends AbstractMap<String, Object> {
+
+  private final Buffer buffer;
+  private int size = -1;
+
+  /**
+   * Creates a view over a buffer holding exactly one BSON document.
+   */
+  public RawBSONDocument(Buffer buffer) {
+    if (buffer.length() < 5 || LE.getInt(buffer, 0) != buffer.length()) {
+      throw new DecodeException("Buffer does not contain a single BSON document");
+    }
+    this.buffer = buffer;
+  }
+
+  /**
+   * Creates a view over the BSON document that starts at pos without copying it.
+   */
+  public static RawBSONDocument slice(Buffer buffer, int pos) {
+    return new RawBSONDocument(buffer.slice(pos, pos + LE.getInt(buffer, pos)));
+  }
+
+  /**
+   * @return the encoded document, the buffer is not copied.
+   */
+  public Buffer getBuffer() {
+    return buffer;
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+
+    int pos = find((String) key);
+    if (pos == -1) {
+      return null;
+    }
+    return decodeField(buffer, pos);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof String && find((String) key) != -1;
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public int size() {
+    if (size == -1) {
+      int count = 0;
+      int length = buffer.length() - 1;
+      int pos = 4;
+
+      while (pos < length) {
+        byte type = LE.getByte(buffer, pos);
+        if (type != UNDEFINED) {
+          count++;
+        }
+        pos = skipField(buffer, pos);
+      }
+      size = count;
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new FieldIterator();
+      }
+
+      @Override
+      public int size() {
+        return RawBSONDocument.this.size();
+      }
+    };
+  }
+
+  /**
+   * Locates a field by comparing the encoded key bytes in place.
+   *
+   * @return position of the element type byte or -1 when not found.
+   */
+  @SuppressWarnings("deprecation")
+  private int find(String key) {
+    byte[] name = key.getBytes(StandardCharsets.UTF_8);
+    int length = buffer.length() - 1;
+    int pos = 4;
+
+    while (pos < length) {
+      if (LE.getByte(buffer, pos) != UNDEFINED && matches(buffer, pos + 1, name)) {
+        return pos;
+      }
+      pos = skipField(buffer, pos);
+    }
+    return -1;
+  }
+
+  private static boolean matches(Buffer buffer, int pos, byte[] name) {
+    if (pos + name.length >= buffer.length()) {
+      return false;
+    }
+    for (int i = 0; i < name.length; i++) {
+      if (buffer.getByte(pos + i) != name[i]) {
+        return false;
+      }
+    }
+    return buffer.getByte(pos + name.length) == (byte) 0x00;
+  }
+
+  /**
+   * @return the position of the next element after the one at pos.
+   */
+  static int skipField(Buffer buffer, int pos) {
+    byte type = LE.getByte(buffer, pos);
+    int valuePos = LE.skipCString(buffer, pos + 1);
+    return valuePos + valueLength(buffer, type, valuePos);
+  }
+
+  /**
+   * Decodes the value of the element at pos, embedded documents and arrays are not decoded but sliced.
+   */
+  static Object decodeField(Buffer buffer, int pos) {
+    byte type = LE.getByte(buffer, pos);
+    int valuePos = LE.skipCString(buffer, pos + 1);
+
+    switch (type) {
+      case EMBEDDED_DOCUMENT:
+        return slice(buffer, valuePos);
+      case ARRAY:
+        return RawBSONList.slice(buffer, valuePos);
+      default:
+        return decodeValue(buffer, type, valuePos);
+    }
+  }
+
+  private final class FieldIterator implements Iterator<Entry<String, Object>> {
+
+    private final int length = buffer.length() - 1;
+    private int pos = skipUndefined(4);
+
+    @SuppressWarnings("deprecation")
+    private int skipUndefined(int pos) {
+      while (pos < length && LE.getByte(buffer, pos) == UNDEFINED) {
+        pos = skipField(buffer, pos);
+      }
+      return pos;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return pos < length;
+    }
+
+    @Override
+    public Entry<String, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final int field = pos;
+      final int keyEnd = LE.skipCString(buffer, field + 1);
+      final String key = FieldNameCache.decode(buffer, field + 1, keyEnd - field - 2);
+      pos = skipUndefined(skipField(buffer, field));
+
+      return new Entry<String, Object>() {
+        @Override
+        public String getKey() {
+          return key;
+        }
+
+        @Override
+        public Object getValue() {
+          return decodeField(buffer, field);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+          if (!(o instanceof Entry)) {
+            return false;
+          }
+          Entry<?, ?> e = (Entry<?, ?>) o;
+          return key.equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+          return key.hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+          return key + "=" + getValue();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.UNDEFINED;
+
+/**
+ * Read only List view over an encoded BSON array.
+ * <p>
+ * The element offsets are indexed on first access, elements are only decoded when read.
+ *
+ * @see RawBSONDocument
+ */
+public final class RawBSONList extends AbstractList<Object> implements RandomAccess {
+
+  private final Buffer buffer;
+  private int[] offsets;
+
+  /**
+   * Creates a view over a buffer holding exactly one BSON array.
+   */
+  public RawBSONList(Buffer buffer) {
+    if (buffer.length() < 5 || LE.getInt(buffer, 0) != buffer.length()) {
+      throw new DecodeException("Buffer does not contain a single BSON array");
+    }
+    this.buffer = buffer;
+  }
+
+  /**
+   * Creates a view over the BSON array that starts at pos without copying it.
+   */
+  public static RawBSONList slice(Buffer buffer, int pos) {
+    return new RawBSONList(buffer.slice(pos, pos + LE.getInt(buffer, pos)));
+  }
+
+  /**
+   * @return the encoded array, the buffer is not copied.
+   */
+  public Buffer getBuffer() {
+    return buffer;
+  }
+
+  @Override
+  public Object get(int index) {
+    int[] offsets = offsets();
+    if (index < 0 || index >= offsets.length) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + offsets.length);
+    }
+    return RawBSONDocument.decodeField(buffer, offsets[index]);
+  }
+
+  @Override
+  public int size() {
+    return offsets().length;
+  }
+
+  @SuppressWarnings("deprecation")
+  private int[] offsets() {
+    if (offsets == null) {
+      int[] index = new int[8];
+      int count = 0;
+      int length = buffer.length() - 1;
+      int pos = 4;
+
+      while (pos < length) {
+        if (LE.getByte(buffer, pos) != UNDEFINED) {
+          if (count == index.length) {
+            index = Arrays.copyOf(index, count * 2);
+          }
+          index[count++] = pos;
+        }
+        pos = RawBSONDocument.skipField(buffer, pos);
+      }
+      offsets = Arrays.copyOf(index, count);
+    }
+    return offsets;
+  }
+}
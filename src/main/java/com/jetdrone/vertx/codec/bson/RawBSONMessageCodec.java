@@ -0,0 +1,41 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * Codec for {@link RawBSONDocument}, the received document is not decoded but exposed as a lazy view over the wire
+ * buffer.
+ */
+public class RawBSONMessageCodec implements MessageCodec<RawBSONDocument, RawBSONDocument> {
+
+  @Override
+  public void encodeToWire(Buffer buffer, RawBSONDocument document) {
+    buffer.appendBuffer(document.getBuffer());
+  }
+
+  @Override
+  public RawBSONDocument decodeFromWire(int i, Buffer buffer) {
+    if (buffer == null) {
+      return null;
+    }
+
+    return RawBSONDocument.slice(buffer, i);
+  }
+
+  @Override
+  public RawBSONDocument transform(RawBSONDocument document) {
+    // read only, safe to share
+    return document;
+  }
+
+  @Override
+  public String name() {
+    return "RawBSON";
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
@@ -0,0 +1,142 @@
+package com.jetdrone.vertx.codec.bson.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.EncodeException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bounded symbol table for element names.
+ * <p>
+ * Messages reuse the same few field names over and over, so on encode the validated NUL terminated UTF-8 bytes of a
+ * name are cached and on decode the bytes are mapped back to a canonical String instance. Both tables are direct mapped,
+ * a new name replaces the one in its slot, so they stay bounded while following the names currently in use, and are
+ * safe to use from any thread.
+ */
+public final class FieldNameCache {
+
+  // names longer than this are rare and not worth caching
+  private static final int MAX_NAME_LENGTH = 128;
+  // must be powers of 2
+  private static final int ENCODE_TABLE_SIZE = 4096;
+  private static final int DECODE_TABLE_SIZE = 4096;
+
+  // entries are immutable so a racy read always sees a complete entry
+  private static final Entry[] ENCODE = new Entry[ENCODE_TABLE_SIZE];
+  private static final Entry[] DECODE = new Entry[DECODE_TABLE_SIZE];
+
+  private static final class Entry {
+    final int hash;
+    final byte[] bytes;
+    final String name;
+
+    Entry(int hash, byte[] bytes, String name) {
+      this.hash = hash;
+      this.bytes = bytes;
+      this.name = name;
+    }
+  }
+
+  private FieldNameCache() {
+  }
+
+  /**
+   * @return the UTF-8 bytes of the name followed by 0x00. The table is not used, callers keeping the bytes would only
+   * evict the names of the messages being encoded.
+   */
+  public static byte[] encode(String name) {
+    return toCString(name);
+  }
+
+  /**
+   * Appends the UTF-8 bytes of the name followed by 0x00, names that can not be cached are encoded in place.
+   */
+  public static void append(Buffer buffer, String name) {
+    byte[] bytes = cached(name);
+    if (bytes != null) {
+      LE.appendBytes(buffer, bytes);
+    } else {
+      LE.appendCString(buffer, name);
+    }
+  }
+
+  /**
+   * @return the number of bytes {@link #append(Buffer, String)} writes
+   */
+  public static int length(String name) {
+    byte[] bytes = cached(name);
+    return bytes != null ? bytes.length : UTF8.length(name) + 1;
+  }
+
+  /**
+   * @return the cached bytes of the name, null when the name can not be cached
+   */
+  private static byte[] cached(String name) {
+    if (name.length() > MAX_NAME_LENGTH) {
+      return null;
+    }
+
+    final int hash = name.hashCode();
+    final int slot = (hash ^ (hash >>> 16)) & (ENCODE_TABLE_SIZE - 1);
+    Entry entry = ENCODE[slot];
+
+    if (entry != null && entry.hash == hash && (entry.name == name || entry.name.equals(name))) {
+      return entry.bytes;
+    }
+
+    byte[] bytes = toCString(name);
+    ENCODE[slot] = new Entry(hash, bytes, name);
+    return bytes;
+  }
+
+  /**
+   * Decodes the name of length bytes (excluding the 0x00) that starts at pos.
+   */
+  public static String decode(Buffer buffer, int pos, int length) {
+    if (length > MAX_NAME_LENGTH) {
+      return LE.getString(buffer, pos, length);
+    }
+
+    int hash = 1;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + buffer.getByte(pos + i);
+    }
+
+    final int slot = (hash ^ (hash >>> 16)) & (DECODE_TABLE_SIZE - 1);
+    Entry entry = DECODE[slot];
+
+    if (entry != null && entry.hash == hash && matches(buffer, pos, length, entry.bytes)) {
+      return entry.name;
+    }
+
+    byte[] bytes = LE.getBytes(buffer, pos, length);
+    String name = new String(bytes, StandardCharsets.UTF_8);
+    DECODE[slot] = new Entry(hash, bytes, name);
+    return name;
+  }
+
+  private static boolean matches(Buffer buffer, int pos, int length, byte[] bytes) {
+    if (bytes.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer.getByte(pos + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] toCString(String name) {
+    byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+    byte[] bytes = new byte[utf8.length + 1];
+    // validate if it is a real C string
+    for (int i = 0; i < utf8.length; i++) {
+      if (utf8[i] == '\0') {
+        throw new EncodeException("Key: '" + name + "' is not a CString");
+      }
+      bytes[i] = utf8[i];
+    }
+    return bytes;
+  }
+}
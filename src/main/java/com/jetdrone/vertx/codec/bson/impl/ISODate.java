@@ -0,0 +1,172 @@
+package com.jetdrone.vertx.codec.bson.impl;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * ISO-8601 UTC date times ({@code yyyy-MM-ddTHH:mm:ss.SSSZ}) written and read straight from buffers.
+ * <p>
+ * The common form is converted with the civil calendar arithmetic of {@code java.time} done inline, without the
+ * thread confined {@code SimpleDateFormat} or intermediate objects. Years outside 0-9999 and other offsets or
+ * precisions go through {@link DateTimeFormatter}.
+ */
+public final class ISODate {
+
+  private static final long MILLIS_PER_DAY = 86400000L;
+  // 0000-01-01T00:00:00.000Z and 10000-01-01T00:00:00.000Z
+  private static final long MIN_FAST = -62167219200000L;
+  private static final long MAX_FAST = 253402300800000L;
+
+  private ISODate() {
+  }
+
+  /**
+   * @return the date time of the given milliseconds since the epoch
+   */
+  public static String format(long millis) {
+    Buffer buffer = Buffer.buffer(24);
+    append(buffer, millis);
+    return buffer.toString(StandardCharsets.US_ASCII.name());
+  }
+
+  /**
+   * Appends the ASCII date time of the given milliseconds since the epoch.
+   */
+  public static void append(Buffer buffer, long millis) {
+    if (millis < MIN_FAST || millis >= MAX_FAST) {
+      buffer.appendString(DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(millis)), "US-ASCII");
+      return;
+    }
+
+    long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+    int time = (int) Math.floorMod(millis, MILLIS_PER_DAY);
+
+    // civil from days, the year starts in March so the leap day is the last day of the year
+    long z = days + 719468;
+    long era = Math.floorDiv(z, 146097);
+    int doe = (int) (z - era * 146097);
+    int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+    int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+    int mp = (5 * doy + 2) / 153;
+    int day = doy - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    int year = (int) (yoe + era * 400) + (month <= 2 ? 1 : 0);
+
+    int pos = buffer.length();
+    // grow the buffer once
+    buffer.setByte(pos + 23, (byte) 'Z');
+    digits(buffer, pos, year, 4);
+    buffer.setByte(pos + 4, (byte) '-');
+    digits(buffer, pos + 5, month, 2);
+    buffer.setByte(pos + 7, (byte) '-');
+    digits(buffer, pos + 8, day, 2);
+    buffer.setByte(pos + 10, (byte) 'T');
+    digits(buffer, pos + 11, time / 3600000, 2);
+    buffer.setByte(pos + 13, (byte) ':');
+    digits(buffer, pos + 14, time / 60000 % 60, 2);
+    buffer.setByte(pos + 16, (byte) ':');
+    digits(buffer, pos + 17, time / 1000 % 60, 2);
+    buffer.setByte(pos + 19, (byte) '.');
+    digits(buffer, pos + 20, time % 1000, 3);
+  }
+
+  /**
+   * Parses the ASCII date time between start and end.
+   *
+   * @return milliseconds since the epoch
+   * @throws java.time.format.DateTimeParseException if the text is not an ISO-8601 date time with an offset
+   */
+  public static long parse(Buffer buffer, int start, int end) {
+    // yyyy-MM-ddTHH:mm:ss[.S+]Z
+    final int length = end - start;
+    if (length >= 20 && buffer.getByte(end - 1) == 'Z'
+        && buffer.getByte(start + 4) == '-' && buffer.getByte(start + 7) == '-' && buffer.getByte(start + 10) == 'T'
+        && buffer.getByte(start + 13) == ':' && buffer.getByte(start + 16) == ':') {
+
+      int year = number(buffer, start, 4);
+      int month = number(buffer, start + 5, 2);
+      int day = number(buffer, start + 8, 2);
+      int hour = number(buffer, start + 11, 2);
+      int minute = number(buffer, start + 14, 2);
+      int second = number(buffer, start + 17, 2);
+
+      int millis = 0;
+      boolean valid = length == 20;
+      if (length > 21 && buffer.getByte(start + 19) == '.') {
+        valid = true;
+        int digits = end - 1 - (start + 20);
+        for (int i = 0; i < digits; i++) {
+          int digit = buffer.getByte(start + 20 + i) - '0';
+          if (digit < 0 || digit > 9) {
+            valid = false;
+            break;
+          }
+          // milliseconds precision, further digits are truncated
+          if (i < 3) {
+            millis = millis * 10 + digit;
+          }
+        }
+        for (int i = digits; i < 3; i++) {
+          millis *= 10;
+        }
+      }
+
+      if (valid && year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+          && hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59) {
+        return (daysFromCivil(year, month, day) * 86400 + hour * 3600 + minute * 60 + second) * 1000 + millis;
+      }
+    }
+
+    String text = buffer.getString(start, end, StandardCharsets.US_ASCII.name());
+    return OffsetDateTime.parse(text, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant().toEpochMilli();
+  }
+
+  private static long daysFromCivil(int year, int month, int day) {
+    year -= month <= 2 ? 1 : 0;
+    int era = Math.floorDiv(year, 400);
+    int yoe = year - era * 400;
+    int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097L + doe - 719468;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * @return the value of count ASCII digits, -1 if any is not a digit
+   */
+  private static int number(Buffer buffer, int pos, int count) {
+    int value = 0;
+    for (int i = 0; i < count; i++) {
+      int digit = buffer.getByte(pos + i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static void digits(Buffer buffer, int pos, int value, int count) {
+    for (int i = pos + count - 1; i >= pos; i--) {
+      buffer.setByte(i, (byte) ('0' + value % 10));
+      value /= 10;
+    }
+  }
+}
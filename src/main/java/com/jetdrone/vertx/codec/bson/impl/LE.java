@@ -4,12 +4,8 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.EncodeException;
 
-import java.nio.charset.Charset;
-
 public final class LE {
 
-  private static final Charset UTF8 = Charset.forName("UTF-8");
-
   public static void appendBoolean(Buffer buffer, boolean value) {
     buffer.appendByte(value ? (byte) 0x01 : (byte) 0x00);
   }
@@ -49,22 +45,19 @@ public final class LE {
   }
 
   public static void appendCString(Buffer buffer, String value) {
-    byte[] bytes = value.getBytes(UTF8);
     // validate if it is a real C string
-    for (byte aByte : bytes) {
-      if (aByte == '\0') {
-        throw new EncodeException("Key: '" + value + "' is not a CString");
-      }
+    if (value.indexOf('\0') != -1) {
+      throw new EncodeException("Key: '" + value + "' is not a CString");
     }
-    buffer.appendBytes(bytes);
+    UTF8.append(buffer, value, UTF8.length(value));
     buffer.appendByte((byte) 0x00);
   }
 
   // TODO: this is wrong i am mixing BSON encoding with generic LE encoding
   public static void appendString(Buffer buffer, String value) {
-    byte[] bytes = value.getBytes(UTF8);
-    appendInt(buffer, bytes.length + 1);
-    buffer.appendBytes(bytes);
+    int length = UTF8.length(value);
+    appendInt(buffer, length + 1);
+    UTF8.append(buffer, value, length);
     buffer.appendByte((byte) 0x00);
   }
 
@@ -138,10 +131,20 @@ public final class LE {
     while (buffer.getByte(end) != (byte) 0x00) {
       end++;
     }
-    return buffer.getString(pos, end, "UTF-8");
+    return UTF8.read(buffer, pos, end - pos);
+  }
+
+  /**
+   * Returns the position right after the terminating 0x00 of the CString that starts at pos.
+   */
+  public static int skipCString(Buffer buffer, int pos) {
+    while (buffer.getByte(pos) != (byte) 0x00) {
+      pos++;
+    }
+    return pos + 1;
   }
 
   public static String getString(Buffer buffer, int pos, int length) {
-    return buffer.getString(pos, pos + length, "UTF-8");
+    return UTF8.read(buffer, pos, length);
   }
 }
@@ -0,0 +1,87 @@
+package com.jetdrone.vertx.codec.bson.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Per thread scratch buffer for temporary encodings.
+ * <p>
+ * Codecs run on event loop threads, so every thread keeps one heap buffer that is handed out, cleared, for work that
+ * needs a temporary destination. Nested use on the same thread gets a fresh buffer instead. The capacity adapts to the
+ * workload: it grows with the encodings, is dropped after an oversized one and is halved when it stays mostly unused.
+ */
+public final class Scratch {
+
+  private static final int INITIAL_CAPACITY = 256;
+  // buffers grown past this are not kept
+  private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+  // number of consecutive small uses before the capacity is halved
+  private static final int SHRINK_THRESHOLD = 64;
+
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private ByteBuf buf = Unpooled.buffer(INITIAL_CAPACITY);
+  private Buffer buffer = Buffer.buffer(buf);
+  private boolean inUse;
+  private int smallUses;
+
+  private Scratch() {
+  }
+
+  /**
+   * @return an empty buffer, to be given back with {@link #release(Buffer)}
+   */
+  public static Buffer acquire() {
+    Scratch scratch = SCRATCH.get();
+    if (scratch.inUse) {
+      return Buffer.buffer();
+    }
+    scratch.inUse = true;
+    scratch.buf.clear();
+    return scratch.buffer;
+  }
+
+  /**
+   * Gives back a buffer returned by {@link #acquire()}, the buffer must not be used afterwards.
+   */
+  public static void release(Buffer buffer) {
+    Scratch scratch = SCRATCH.get();
+    if (buffer == scratch.buffer) {
+      scratch.recycle();
+    }
+  }
+
+  private void recycle() {
+    final int used = buf.writerIndex();
+    final int capacity = buf.capacity();
+
+    if (capacity > MAX_RETAINED_CAPACITY) {
+      reset(INITIAL_CAPACITY);
+    } else if (capacity > INITIAL_CAPACITY && used <= capacity / 4) {
+      if (++smallUses == SHRINK_THRESHOLD) {
+        buf.clear();
+        buf.capacity(Math.max(INITIAL_CAPACITY, capacity / 2));
+        smallUses = 0;
+      }
+    } else {
+      smallUses = 0;
+    }
+
+    buf.clear();
+    inUse = false;
+  }
+
+  private void reset(int capacity) {
+    buf = Unpooled.buffer(capacity);
+    buffer = Buffer.buffer(buf);
+    smallUses = 0;
+  }
+
+  /**
+   * @return the capacity of the scratch buffer of the current thread
+   */
+  static int capacity() {
+    return SCRATCH.get().buf.capacity();
+  }
+}
@@ -0,0 +1,155 @@
+package com.jetdrone.vertx.codec.bson.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 codec that works in place on the buffer.
+ * <p>
+ * Encoding computes the exact length first, grows the buffer once and writes the characters straight into the backing
+ * array (ASCII is a plain narrowing store, everything else goes through a hand rolled encoder). Decoding builds the
+ * String from the backing array without the temporary copy and the charset lookup by name of
+ * {@link Buffer#getString(int, int, String)}, the JDK decoder itself copies ASCII runs without decoding them.
+ * Direct buffers are encoded byte by byte in place and decoded with the JDK decoder.
+ * <p>
+ * Like {@link String#getBytes(java.nio.charset.Charset)}, unpaired surrogates are encoded as '?'.
+ */
+public final class UTF8 {
+
+  private UTF8() {
+  }
+
+  /**
+   * Number of bytes the UTF-8 encoding of value takes, computed without encoding it.
+   */
+  public static int length(String value) {
+    final int len = value.length();
+    int size = len;
+
+    for (int i = 0; i < len; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          size++;
+        } else if (Character.isSurrogate(c)) {
+          if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+            // 4 bytes for the pair
+            size += 2;
+            i++;
+          }
+          // a lone surrogate is replaced by '?'
+        } else {
+          size += 2;
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Appends the UTF-8 encoding of value, length must be the value returned by {@link #length(String)}.
+   */
+  public static void append(Buffer buffer, String value, int length) {
+    if (length == 0) {
+      return;
+    }
+
+    final int pos = buffer.length();
+    // grow the buffer to its final length, the bytes are then set in place
+    buffer.setByte(pos + length - 1, (byte) 0x00);
+
+    // one duplicate per string, it is not cached since Buffer#readFromBuffer replaces the wrapped ByteBuf
+    final ByteBuf buf = buffer.getByteBuf();
+    if (!buf.hasArray()) {
+      appendDirect(buf, pos, value);
+      return;
+    }
+
+    final byte[] array = buf.array();
+    int off = buf.arrayOffset() + pos;
+    final int len = value.length();
+    int i = 0;
+
+    // ASCII fast path
+    for (; i < len; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        break;
+      }
+      array[off++] = (byte) c;
+    }
+
+    for (; i < len; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        array[off++] = (byte) c;
+      } else if (c < 0x800) {
+        array[off++] = (byte) (0xc0 | (c >> 6));
+        array[off++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+          int cp = Character.toCodePoint(c, value.charAt(++i));
+          array[off++] = (byte) (0xf0 | (cp >> 18));
+          array[off++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+          array[off++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+          array[off++] = (byte) (0x80 | (cp & 0x3f));
+        } else {
+          array[off++] = '?';
+        }
+      } else {
+        array[off++] = (byte) (0xe0 | (c >> 12));
+        array[off++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        array[off++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  /**
+   * Same as the array path, for direct buffers the bytes are set one by one, which Netty turns into plain memory
+   * stores, instead of encoding to a temporary array first.
+   */
+  private static void appendDirect(ByteBuf buf, int off, String value) {
+    final int len = value.length();
+
+    for (int i = 0; i < len; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buf.setByte(off++, c);
+      } else if (c < 0x800) {
+        buf.setByte(off++, 0xc0 | (c >> 6));
+        buf.setByte(off++, 0x80 | (c & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+          int cp = Character.toCodePoint(c, value.charAt(++i));
+          buf.setByte(off++, 0xf0 | (cp >> 18));
+          buf.setByte(off++, 0x80 | ((cp >> 12) & 0x3f));
+          buf.setByte(off++, 0x80 | ((cp >> 6) & 0x3f));
+          buf.setByte(off++, 0x80 | (cp & 0x3f));
+        } else {
+          buf.setByte(off++, '?');
+        }
+      } else {
+        buf.setByte(off++, 0xe0 | (c >> 12));
+        buf.setByte(off++, 0x80 | ((c >> 6) & 0x3f));
+        buf.setByte(off++, 0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  /**
+   * Decodes length bytes starting at pos.
+   */
+  public static String read(Buffer buffer, int pos, int length) {
+    if (length == 0) {
+      return "";
+    }
+
+    final ByteBuf buf = buffer.getByteBuf();
+    if (buf.hasArray()) {
+      return new String(buf.array(), buf.arrayOffset() + pos, length, StandardCharsets.UTF_8);
+    }
+    return buf.toString(pos, length, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,640 @@
+package com.jetdrone.vertx.codec.bson.processor;
+
+import com.jetdrone.vertx.codec.bson.BSONEntity;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Generates a {@code MessageCodec} for every class annotated with {@link BSONEntity}.
+ * <p>
+ * The generated codec writes each field with the {@code LE} helpers using pre-encoded element names and decodes with a
+ * {@code BSONReader} switching on the element name, so neither direction uses reflection or an intermediate map.
+ */
+@SupportedAnnotationTypes("com.jetdrone.vertx.codec.bson.BSONEntity")
+public class BSONEntityProcessor extends AbstractProcessor {
+
+  private static final String SUFFIX = "BSONCodec";
+
+  /**
+   * How a property is written and read.
+   */
+  private enum Kind {
+    INT32("INT32", "LE.appendInt", "reader.readInt32()"),
+    INT64("INT64", "LE.appendLong", "reader.readInt64()"),
+    FLOAT("FLOAT", "LE.appendDouble", "reader.readDouble()"),
+    BOOLEAN("BOOLEAN", "LE.appendBoolean", "reader.readBoolean()"),
+    STRING("STRING", "LE.appendString", "reader.readString()"),
+    BINARY("BINARY", null, "reader.readBinaryData()"),
+    OBJECT_ID("OBJECT_ID", null, "reader.readObjectId()"),
+    DATE("UTC_DATETIME", null, "new java.util.Date(reader.readDateTime())"),
+    ENTITY("EMBEDDED_DOCUMENT", null, null),
+    // arrays and lists of any of the other kinds, see Property.element
+    ARRAY("ARRAY", null, null),
+    LIST("ARRAY", null, null),
+    VALUE(null, null, "reader.readValue()");
+
+    final String type;
+    final String append;
+    final String read;
+
+    Kind(String type, String append, String read) {
+      this.type = type;
+      this.append = append;
+      this.read = read;
+    }
+  }
+
+  private static final class Property {
+    final String name;
+    final String type;
+    final Kind kind;
+    final boolean primitive;
+    // cast applied to the decoded value, e.g. for short fields
+    final String cast;
+    // codec of the embedded entity
+    final String codec;
+    final String getter;
+    final String setter;
+    // elements of an array or a list
+    final Property element;
+
+    Property(String name, String type, Kind kind, boolean primitive, String cast, String codec, String getter,
+             String setter) {
+      this(name, type, kind, primitive, cast, codec, getter, setter, null);
+    }
+
+    Property(String name, String type, Kind kind, boolean primitive, String cast, String codec, String getter,
+             String setter, Property element) {
+      this.name = name;
+      this.type = type;
+      this.kind = kind;
+      this.primitive = primitive;
+      this.cast = cast;
+      this.codec = codec;
+      this.getter = getter;
+      this.setter = setter;
+      this.element = element;
+    }
+
+    String get() {
+      return getter == null ? "value." + name : "value." + getter + "()";
+    }
+
+    String set(String expression) {
+      return setter == null ? "value." + name + " = " + expression + ";" : "value." + setter + "(" + expression + ");";
+    }
+  }
+
+  private static final class InvalidEntityException extends Exception {
+    final Element element;
+
+    InvalidEntityException(Element element, String message) {
+      super(message);
+      this.element = element;
+    }
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(BSONEntity.class)) {
+      try {
+        generate(entity(element));
+      } catch (InvalidEntityException e) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+      } catch (IOException e) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write codec: " + e, element);
+      }
+    }
+    return true;
+  }
+
+  private TypeElement entity(Element element) throws InvalidEntityException {
+    if (element.getKind() != ElementKind.CLASS) {
+      throw new InvalidEntityException(element, "@BSONEntity can only be applied to classes");
+    }
+    TypeElement type = (TypeElement) element;
+    Set<Modifier> modifiers = type.getModifiers();
+    if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+      throw new InvalidEntityException(type, "@BSONEntity classes can not be abstract or private");
+    }
+    if (type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+      throw new InvalidEntityException(type, "@BSONEntity nested classes must be static");
+    }
+    if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+      throw new InvalidEntityException(type, "@BSONEntity can not be applied to local classes");
+    }
+    if (!type.getTypeParameters().isEmpty()) {
+      throw new InvalidEntityException(type, "@BSONEntity classes can not be generic");
+    }
+
+    boolean constructor = false;
+    for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) {
+        constructor = true;
+      }
+    }
+    if (!constructor) {
+      throw new InvalidEntityException(type, "@BSONEntity classes need a non private no argument constructor");
+    }
+    return type;
+  }
+
+  /**
+   * @return the entity class and its superclasses, the topmost first
+   */
+  private List<TypeElement> hierarchy(TypeElement type) {
+    List<TypeElement> hierarchy = new ArrayList<>();
+    for (TypeElement t = type; t != null; ) {
+      if (t.getQualifiedName().contentEquals("java.lang.Object")) {
+        break;
+      }
+      hierarchy.add(0, t);
+      TypeMirror superclass = t.getSuperclass();
+      t = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+    return hierarchy;
+  }
+
+  private List<Property> properties(TypeElement type) throws InvalidEntityException {
+    List<Property> properties = new ArrayList<>();
+    Set<String> names = new HashSet<>();
+    List<TypeElement> hierarchy = hierarchy(type);
+    List<ExecutableElement> methods = new ArrayList<>();
+    for (TypeElement t : hierarchy) {
+      methods.addAll(ElementFilter.methodsIn(t.getEnclosedElements()));
+    }
+    PackageElement entityPackage = processingEnv.getElementUtils().getPackageOf(type);
+
+    // inherited fields first, in the order they are declared
+    for (TypeElement declaring : hierarchy) {
+      boolean inherited = declaring != type;
+      boolean samePackage = processingEnv.getElementUtils().getPackageOf(declaring).equals(entityPackage);
+
+      for (VariableElement field : ElementFilter.fieldsIn(declaring.getEnclosedElements())) {
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+          continue;
+        }
+
+        String name = field.getSimpleName().toString();
+        if (!names.add(name)) {
+          throw new InvalidEntityException(inherited ? type : field, "Field '" + name + "' is declared twice");
+        }
+        if (inherited && !samePackage && !modifiers.contains(Modifier.PRIVATE) &&
+            !modifiers.contains(Modifier.PUBLIC)) {
+          throw new InvalidEntityException(type, "Inherited field '" + name + "' of " + declaring.getQualifiedName() +
+              " is not accessible from " + entityPackage.getQualifiedName() + ", make it public or private with a " +
+              "getter and a setter");
+        }
+
+        properties.add(property(field, name, methods));
+      }
+    }
+    return properties;
+  }
+
+  private Property property(VariableElement field, String name, List<ExecutableElement> methods)
+      throws InvalidEntityException {
+    Set<Modifier> modifiers = field.getModifiers();
+    TypeMirror fieldType = field.asType();
+
+    String getter = null;
+    String setter = null;
+    if (modifiers.contains(Modifier.PRIVATE)) {
+      String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+      getter = findMethod(methods, fieldType.getKind() == TypeKind.BOOLEAN ? "is" + suffix : "get" + suffix, 0);
+      if (getter == null) {
+        getter = findMethod(methods, "get" + suffix, 0);
+      }
+      setter = findMethod(methods, "set" + suffix, 1);
+      if (getter == null || setter == null) {
+        throw new InvalidEntityException(field, "Private field '" + name + "' needs a getter and a setter");
+      }
+    } else if (modifiers.contains(Modifier.FINAL)) {
+      throw new InvalidEntityException(field, "Field '" + name + "' can not be final");
+    }
+
+    return property(field, name, fieldType, getter, setter);
+  }
+
+  private Property property(VariableElement field, String name, TypeMirror type, String getter, String setter)
+      throws InvalidEntityException {
+
+    String typeName = type.toString();
+
+    if (type.getKind().isPrimitive()) {
+      return primitive(field, name, typeName, type.getKind(), true, getter, setter);
+    }
+
+    if (type.getKind() == TypeKind.ARRAY) {
+      TypeMirror component = ((ArrayType) type).getComponentType();
+      if (component.getKind() == TypeKind.BYTE) {
+        return new Property(name, typeName, Kind.BINARY, false, null, null, getter, setter);
+      }
+      // arrays of a generic type can not be created
+      if (!component.toString().contains("<")) {
+        return new Property(name, typeName, Kind.ARRAY, false, null, null, getter, setter,
+            property(field, name, component, null, null));
+      }
+    }
+
+    if (type.getKind() == TypeKind.DECLARED) {
+      TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+      String qualified = element.getQualifiedName().toString();
+
+      try {
+        PrimitiveType unboxed = processingEnv.getTypeUtils().unboxedType(type);
+        return primitive(field, name, typeName, unboxed.getKind(), false, getter, setter);
+      } catch (IllegalArgumentException e) {
+        // not a boxed primitive
+      }
+
+      switch (qualified) {
+        case "java.lang.String":
+          return new Property(name, typeName, Kind.STRING, false, null, null, getter, setter);
+        case "com.jetdrone.vertx.codec.bson.ObjectId":
+          return new Property(name, typeName, Kind.OBJECT_ID, false, null, null, getter, setter);
+        case "java.util.Date":
+          return new Property(name, typeName, Kind.DATE, false, null, null, getter, setter);
+      }
+
+      if (qualified.equals("java.util.List") || qualified.equals("java.util.ArrayList")) {
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        TypeMirror elementType = arguments.isEmpty() ?
+            processingEnv.getElementUtils().getTypeElement("java.lang.Object").asType() :
+            arguments.get(0);
+        // wildcards are left to BSONMessageCodec
+        if (elementType.getKind() == TypeKind.DECLARED || elementType.getKind() == TypeKind.ARRAY) {
+          return new Property(name, typeName, Kind.LIST, false, null, null, getter, setter,
+              property(field, name, elementType, null, null));
+        }
+      }
+
+      if (element.getAnnotation(BSONEntity.class) != null) {
+        return new Property(name, typeName, Kind.ENTITY, false, null, codecName(element), getter, setter);
+      }
+    }
+
+    // anything else is handled like BSONMessageCodec does
+    return new Property(name, typeName, Kind.VALUE, false, null, null, getter, setter);
+  }
+
+  private static Property primitive(VariableElement field, String name, String typeName, TypeKind kind,
+                                    boolean primitive, String getter, String setter) throws InvalidEntityException {
+    switch (kind) {
+      case INT:
+        return new Property(name, typeName, Kind.INT32, primitive, null, null, getter, setter);
+      case SHORT:
+        return new Property(name, typeName, Kind.INT32, primitive, "(short) ", null, getter, setter);
+      case BYTE:
+        return new Property(name, typeName, Kind.INT32, primitive, "(byte) ", null, getter, setter);
+      case LONG:
+        return new Property(name, typeName, Kind.INT64, primitive, null, null, getter, setter);
+      case DOUBLE:
+        return new Property(name, typeName, Kind.FLOAT, primitive, null, null, getter, setter);
+      case FLOAT:
+        return new Property(name, typeName, Kind.FLOAT, primitive, "(float) ", null, getter, setter);
+      case BOOLEAN:
+        return new Property(name, typeName, Kind.BOOLEAN, primitive, null, null, getter, setter);
+      default:
+        throw new InvalidEntityException(field, "Unsupported field type: " + typeName);
+    }
+  }
+
+  private static String findMethod(List<ExecutableElement> methods, String name, int parameters) {
+    for (ExecutableElement method : methods) {
+      if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == parameters &&
+          !method.getModifiers().contains(Modifier.PRIVATE) && !method.getModifiers().contains(Modifier.STATIC)) {
+        return name;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the qualified name of the codec generated for the type
+   */
+  private String codecName(TypeElement type) {
+    String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+    String simpleName = simpleCodecName(type);
+    return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+  }
+
+  private static String simpleCodecName(TypeElement type) {
+    // nested classes are flattened, Outer.Inner -> Outer_InnerBSONCodec
+    StringBuilder name = new StringBuilder(type.getSimpleName());
+    Element enclosing = type.getEnclosingElement();
+    while (enclosing instanceof TypeElement) {
+      name.insert(0, '_').insert(0, enclosing.getSimpleName());
+      enclosing = enclosing.getEnclosingElement();
+    }
+    return name.append(SUFFIX).toString();
+  }
+
+  private void generate(TypeElement type) throws InvalidEntityException, IOException {
+    List<Property> properties = properties(type);
+
+    String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+    String codec = simpleCodecName(type);
+    String entity = type.getQualifiedName().toString();
+
+    StringBuilder out = new StringBuilder();
+    if (!packageName.isEmpty()) {
+      out.append("package ").append(packageName).append(";\n\n");
+    }
+    out.append("import com.jetdrone.vertx.codec.bson.BSONMessageCodec;\n");
+    out.append("import com.jetdrone.vertx.codec.bson.BSONReader;\n");
+    out.append("import com.jetdrone.vertx.codec.bson.impl.LE;\n");
+    out.append("import io.vertx.core.buffer.Buffer;\n");
+    out.append("import io.vertx.core.eventbus.MessageCodec;\n");
+    out.append("\n");
+    out.append("import java.nio.charset.StandardCharsets;\n");
+    out.append("\n");
+    out.append("/**\n");
+    out.append(" * Codec for {@link ").append(entity).append("}, generated by ")
+        .append(BSONEntityProcessor.class.getSimpleName()).append(".\n");
+    out.append(" */\n");
+    out.append("public final class ").append(codec).append(" implements MessageCodec<").append(entity).append(", ")
+        .append(entity).append("> {\n\n");
+
+    for (int i = 0; i < properties.size(); i++) {
+      out.append("  private static final byte[] KEY_").append(i).append(" = ")
+          .append(literal(properties.get(i).name + "\0")).append(".getBytes(StandardCharsets.UTF_8);\n");
+    }
+    if (!properties.isEmpty()) {
+      out.append("\n");
+    }
+
+    out.append("  @Override\n");
+    out.append("  public void encodeToWire(Buffer buffer, ").append(entity).append(" value) {\n");
+    out.append("    encode(buffer, value);\n");
+    out.append("  }\n\n");
+
+    out.append("  @Override\n");
+    out.append("  public ").append(entity).append(" decodeFromWire(int pos, Buffer buffer) {\n");
+    out.append("    return decode(new BSONReader(buffer, pos));\n");
+    out.append("  }\n\n");
+
+    out.append("  @Override\n");
+    out.append("  public ").append(entity).append(" transform(").append(entity).append(" value) {\n");
+    out.append("    return value;\n");
+    out.append("  }\n\n");
+
+    out.append("  @Override\n");
+    out.append("  public String name() {\n");
+    out.append("    return ").append(literal(entity)).append(";\n");
+    out.append("  }\n\n");
+
+    out.append("  @Override\n");
+    out.append("  public byte systemCodecID() {\n");
+    out.append("    return -1;\n");
+    out.append("  }\n\n");
+
+    // encode
+    out.append("  /**\n");
+    out.append("   * Appends the value as a BSON document.\n");
+    out.append("   */\n");
+    out.append("  public static void encode(Buffer buffer, ").append(entity).append(" value) {\n");
+    out.append("    int base = buffer.length();\n");
+    out.append("    LE.appendInt(buffer, 0);\n");
+    for (int i = 0; i < properties.size(); i++) {
+      encodeProperty(out, properties.get(i), i);
+    }
+    out.append("    LE.setInt(buffer, base, buffer.length() + 1 - base);\n");
+    out.append("    LE.appendByte(buffer, (byte) 0x00);\n");
+    out.append("  }\n\n");
+
+    // decode
+    out.append("  /**\n");
+    out.append("   * Decodes the current document of the reader, unknown elements are skipped.\n");
+    out.append("   */\n");
+    out.append("  @SuppressWarnings(\"unchecked\")\n");
+    out.append("  public static ").append(entity).append(" decode(BSONReader reader) {\n");
+    out.append("    ").append(entity).append(" value = new ").append(entity).append("();\n");
+    out.append("    reader.startDocument();\n");
+    out.append("    while (reader.nextType() != BSONMessageCodec.END_OF_DOCUMENT) {\n");
+    out.append("      switch (reader.readName()) {\n");
+    for (int i = 0; i < properties.size(); i++) {
+      decodeProperty(out, properties.get(i), i);
+    }
+    out.append("        default:\n");
+    out.append("          reader.skipValue();\n");
+    out.append("      }\n");
+    out.append("    }\n");
+    out.append("    reader.endDocument();\n");
+    out.append("    return value;\n");
+    out.append("  }\n");
+    out.append("}\n");
+
+    String qualified = packageName.isEmpty() ? codec : packageName + "." + codec;
+    try (Writer writer = processingEnv.getFiler().createSourceFile(qualified, type).openWriter()) {
+      writer.write(out.toString());
+    }
+  }
+
+  private static void encodeProperty(StringBuilder out, Property property, int index) {
+    String v = "v" + index;
+    out.append("    // ").append(property.name).append("\n");
+    out.append("    ").append(property.type).append(" ").append(v).append(" = ").append(property.get()).append(";\n");
+    encodeElement(out, "    ", property, v, "LE.appendBytes(buffer, KEY_" + index + ");", String.valueOf(index));
+  }
+
+  /**
+   * Writes the element holding the value of the variable v, key is the statement appending its name and id makes the
+   * names of the generated locals unique.
+   */
+  private static void encodeElement(StringBuilder out, String indent, Property property, String v, String key,
+                                    String id) {
+    if (property.kind == Kind.VALUE) {
+      out.append(indent).append("int t").append(id).append(" = buffer.length();\n");
+      out.append(indent).append("LE.appendByte(buffer, (byte) 0x00);\n");
+      out.append(indent).append(key).append("\n");
+      out.append(indent).append("LE.setByte(buffer, t").append(id).append(", BSONMessageCodec.encodeValue(buffer, ")
+          .append(v).append("));\n");
+      return;
+    }
+
+    final String outer = indent;
+    if (!property.primitive) {
+      out.append(indent).append("if (").append(v).append(" == null) {\n");
+      out.append(indent).append("  LE.appendByte(buffer, BSONMessageCodec.NULL);\n");
+      out.append(indent).append("  ").append(key).append("\n");
+      out.append(indent).append("} else {\n");
+      indent += "  ";
+    }
+
+    out.append(indent).append("LE.appendByte(buffer, BSONMessageCodec.").append(property.kind.type).append(");\n");
+    out.append(indent).append(key).append("\n");
+    switch (property.kind) {
+      case BINARY:
+        out.append(indent).append("LE.appendInt(buffer, ").append(v).append(".length);\n");
+        out.append(indent).append("LE.appendByte(buffer, BSONMessageCodec.BINARY_BINARY);\n");
+        out.append(indent).append("LE.appendBytes(buffer, ").append(v).append(");\n");
+        break;
+      case OBJECT_ID:
+        out.append(indent).append(v).append(".writeTo(buffer);\n");
+        break;
+      case DATE:
+        out.append(indent).append("LE.appendLong(buffer, ").append(v).append(".getTime());\n");
+        break;
+      case ENTITY:
+        out.append(indent).append(property.codec).append(".encode(buffer, ").append(v).append(");\n");
+        break;
+      case ARRAY:
+      case LIST:
+        String a = "a" + id;
+        String i = "i" + id;
+        String e = "e" + id;
+        out.append(indent).append("int ").append(a).append(" = buffer.length();\n");
+        out.append(indent).append("LE.appendInt(buffer, 0);\n");
+        if (property.kind == Kind.ARRAY) {
+          out.append(indent).append("for (int ").append(i).append(" = 0; ").append(i).append(" < ").append(v)
+              .append(".length; ").append(i).append("++) {\n");
+          out.append(indent).append("  ").append(property.element.type).append(" ").append(e).append(" = ").append(v)
+              .append("[").append(i).append("];\n");
+          encodeElement(out, indent + "  ", property.element, e,
+              "BSONMessageCodec.appendIndexKey(buffer, " + i + ");", id + "_");
+        } else {
+          out.append(indent).append("int ").append(i).append(" = 0;\n");
+          out.append(indent).append("for (").append(property.element.type).append(" ").append(e).append(" : ")
+              .append(v).append(") {\n");
+          encodeElement(out, indent + "  ", property.element, e,
+              "BSONMessageCodec.appendIndexKey(buffer, " + i + "++);", id + "_");
+        }
+        out.append(indent).append("}\n");
+        out.append(indent).append("LE.setInt(buffer, ").append(a).append(", buffer.length() + 1 - ").append(a)
+            .append(");\n");
+        out.append(indent).append("LE.appendByte(buffer, (byte) 0x00);\n");
+        break;
+      default:
+        out.append(indent).append(property.kind.append).append("(buffer, ").append(v).append(");\n");
+    }
+
+    if (!property.primitive) {
+      out.append(outer).append("}\n");
+    }
+  }
+
+  private static void decodeProperty(StringBuilder out, Property property, int index) {
+    out.append("        case ").append(literal(property.name)).append(":\n");
+    decodeElement(out, "          ", property, property::set, String.valueOf(index));
+    out.append("          break;\n");
+  }
+
+  /**
+   * Reads the current element, assign turns the read expression into the statement storing it.
+   */
+  private static void decodeElement(StringBuilder out, String indent, Property property,
+                                    Function<String, String> assign, String id) {
+    if (property.kind == Kind.VALUE) {
+      out.append(indent).append(assign.apply("(" + property.type + ") reader.readValue()")).append("\n");
+      return;
+    }
+
+    out.append(indent).append("if (reader.currentType() == BSONMessageCodec.NULL) {\n");
+    out.append(indent).append("  reader.readNull();\n");
+    if (!property.primitive) {
+      out.append(indent).append("  ").append(assign.apply("null")).append("\n");
+    }
+    out.append(indent).append("} else {\n");
+
+    final String inner = indent + "  ";
+    switch (property.kind) {
+      case ARRAY: {
+        // grown by doubling, trimmed at the end
+        String a = "a" + id;
+        String n = "n" + id;
+        out.append(inner).append(property.type).append(" ").append(a).append(" = new ")
+            .append(newArray(property.element.type, "8")).append(";\n");
+        out.append(inner).append("int ").append(n).append(" = 0;\n");
+        out.append(inner).append("reader.startArray();\n");
+        out.append(inner).append("while (reader.nextType() != BSONMessageCodec.END_OF_DOCUMENT) {\n");
+        out.append(inner).append("  reader.skipName();\n");
+        out.append(inner).append("  if (").append(n).append(" == ").append(a).append(".length) {\n");
+        out.append(inner).append("    ").append(a).append(" = java.util.Arrays.copyOf(").append(a).append(", ")
+            .append(n).append(" * 2);\n");
+        out.append(inner).append("  }\n");
+        decodeElement(out, inner + "  ", property.element,
+            read -> a + "[" + n + "++] = " + read + ";", id + "_");
+        out.append(inner).append("}\n");
+        out.append(inner).append("reader.endArray();\n");
+        out.append(inner).append(assign.apply(n + " == " + a + ".length ? " + a + " : java.util.Arrays.copyOf(" + a +
+            ", " + n + ")")).append("\n");
+        break;
+      }
+      case LIST: {
+        String l = "l" + id;
+        out.append(inner).append("java.util.ArrayList<").append(property.element.type).append("> ").append(l)
+            .append(" = new java.util.ArrayList<>();\n");
+        out.append(inner).append("reader.startArray();\n");
+        out.append(inner).append("while (reader.nextType() != BSONMessageCodec.END_OF_DOCUMENT) {\n");
+        out.append(inner).append("  reader.skipName();\n");
+        decodeElement(out, inner + "  ", property.element, read -> l + ".add(" + read + ");", id + "_");
+        out.append(inner).append("}\n");
+        out.append(inner).append("reader.endArray();\n");
+        out.append(inner).append(assign.apply(l)).append("\n");
+        break;
+      }
+      default:
+        String read = property.kind == Kind.ENTITY ? property.codec + ".decode(reader)" : property.kind.read;
+        if (property.cast != null) {
+          read = property.cast + read;
+        }
+        out.append(inner).append(assign.apply(read)).append("\n");
+    }
+    out.append(indent).append("}\n");
+  }
+
+  /**
+   * @return the array creation expression without {@code new}, e.g. {@code int[8][]} for the component {@code int[]}
+   */
+  private static String newArray(String component, String size) {
+    int dims = component.indexOf('[');
+    return dims == -1 ?
+        component + "[" + size + "]" :
+        component.substring(0, dims) + "[" + size + "]" + component.substring(dims);
+  }
+
+  /**
+   * @return the value as a Java string literal
+   */
+  private static String literal(String value) {
+    StringBuilder literal = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        literal.append('\\').append(c);
+      } else if (c < 0x20) {
+        literal.append(String.format("\\%03o", (int) c));
+      } else if (c > 0x7e) {
+        literal.append(String.format("\\u%04x", (int) c));
+      } else {
+        literal.append(c);
+      }
+    }
+    return literal.append('"').toString();
+  }
+}
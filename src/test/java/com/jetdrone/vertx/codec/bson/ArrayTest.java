@@ -0,0 +1,138 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static org.junit.Assert.*;
+
+public class ArrayTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+  private static final BSONMessageCodec PRIMITIVE = new BSONMessageCodec(new BSONCodecOptions().setPrimitiveArrays(true));
+
+  @Test
+  public void testLargeArrayRoundTrip() {
+    List<Object> list = new LinkedList<>();
+    for (int i = 0; i < 3000; i++) {
+      list.add(i % 2 == 0 ? i : "s" + i);
+    }
+    BSONDocument json = new BSONDocument();
+    json.put("_", list);
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, json);
+    assertEquals(buffer.length(), BSONMessageCodec.encodedSize(json));
+
+    BSONDocument document = BSON.decodeFromWire(0, buffer);
+    assertTrue(document.get("_") instanceof RandomAccess);
+    assertEquals(json, document);
+  }
+
+  @Test
+  public void testPrimitiveArraysEncodeLikeBoxedLists() {
+    int[] ints = new int[2000];
+    long[] longs = new long[2000];
+    double[] doubles = new double[2000];
+    List<Object> boxedInts = new ArrayList<>();
+    List<Object> boxedLongs = new ArrayList<>();
+    List<Object> boxedDoubles = new ArrayList<>();
+
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = i * 3;
+      longs[i] = i * 3L << 33;
+      doubles[i] = i / 3.0;
+      boxedInts.add(ints[i]);
+      boxedLongs.add(longs[i]);
+      boxedDoubles.add(doubles[i]);
+    }
+
+    BSONDocument primitive = new BSONDocument();
+    primitive.put("i", ints);
+    primitive.put("l", longs);
+    primitive.put("d", doubles);
+
+    BSONDocument boxed = new BSONDocument();
+    boxed.put("i", boxedInts);
+    boxed.put("l", boxedLongs);
+    boxed.put("d", boxedDoubles);
+
+    Buffer expected = Buffer.buffer();
+    BSON.encodeToWire(expected, boxed);
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, primitive);
+
+    assertArrayEquals(expected.getBytes(), buffer.getBytes());
+    assertEquals(buffer.length(), BSONMessageCodec.encodedSize(primitive));
+
+    // reverse
+    assertEquals(boxed, BSON.decodeFromWire(0, buffer));
+
+    BSONDocument document = PRIMITIVE.decodeFromWire(0, buffer);
+    assertArrayEquals(ints, (int[]) document.get("i"));
+    assertArrayEquals(longs, (long[]) document.get("l"));
+    assertArrayEquals(doubles, (double[]) document.get("d"), 0);
+  }
+
+  @Test
+  public void testMixedAndEmptyArraysStayLists() {
+    BSONDocument json = new BSONDocument();
+    json.put("mixed", Arrays.asList(1, 2L, 3.0));
+    json.put("empty", new ArrayList<>());
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, json);
+
+    assertEquals(json, PRIMITIVE.decodeFromWire(0, buffer));
+  }
+
+  @Test
+  public void testPrimitiveArraysSkipUndefined() {
+    // {"i": [1, undefined, 2], "l": [undefined, 3L], "d": [0.5, undefined]}
+    Buffer buffer = Buffer.buffer();
+    buffer.appendInt(0);
+    int array = startArray(buffer, "i");
+    element(buffer, BSONMessageCodec.INT32, "0").appendInt(Integer.reverseBytes(1));
+    element(buffer, BSONMessageCodec.UNDEFINED, "1");
+    element(buffer, BSONMessageCodec.INT32, "2").appendInt(Integer.reverseBytes(2));
+    end(buffer, array);
+    array = startArray(buffer, "l");
+    element(buffer, BSONMessageCodec.UNDEFINED, "0");
+    element(buffer, BSONMessageCodec.INT64, "1").appendLong(Long.reverseBytes(3L));
+    end(buffer, array);
+    array = startArray(buffer, "d");
+    element(buffer, BSONMessageCodec.FLOAT, "0").appendLong(Long.reverseBytes(Double.doubleToLongBits(0.5)));
+    element(buffer, BSONMessageCodec.UNDEFINED, "1");
+    end(buffer, array);
+    end(buffer, 0);
+
+    BSONDocument document = PRIMITIVE.decodeFromWire(0, buffer);
+    assertArrayEquals(new int[]{1, 2}, (int[]) document.get("i"));
+    assertArrayEquals(new long[]{3L}, (long[]) document.get("l"));
+    assertArrayEquals(new double[]{0.5}, (double[]) document.get("d"), 0);
+
+    // same elements as the list path
+    assertEquals(Arrays.asList(1, 2), BSON.decodeFromWire(0, buffer).get("i"));
+  }
+
+  private static Buffer element(Buffer buffer, byte type, String name) {
+    return buffer.appendByte(type).appendString(name).appendByte((byte) 0);
+  }
+
+  private static int startArray(Buffer buffer, String name) {
+    element(buffer, BSONMessageCodec.ARRAY, name);
+    int start = buffer.length();
+    buffer.appendInt(0);
+    return start;
+  }
+
+  private static void end(Buffer buffer, int start) {
+    buffer.appendByte((byte) 0);
+    buffer.setInt(start, Integer.reverseBytes(buffer.length() - start));
+  }
+}
@@ -0,0 +1,106 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BSONCodecMetricsTest {
+
+  private static BSONDocument document() {
+    BSONDocument document = new BSONDocument();
+    document.put("a", 1);
+    document.put("b", 2);
+    document.put("s", "text");
+    document.put("l", Arrays.asList(1, 2, 3));
+    return document;
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    assertNull(new BSONMessageCodec().getMetrics());
+  }
+
+  @Test
+  public void testCountsAndSizes() {
+    BSONMessageCodec codec = new BSONMessageCodec(new BSONCodecOptions().setMetricsEnabled(true));
+    BSONCodecMetrics metrics = codec.getMetrics();
+
+    Buffer buffer = Buffer.buffer();
+    codec.encodeToWire(buffer, document());
+    codec.encodeToWire(buffer, document());
+    int length = buffer.length() / 2;
+    codec.decodeFromWire(length, buffer);
+
+    BSONCodecMetrics.Operation encode = metrics.getEncode();
+    assertEquals(2, encode.getCount());
+    assertEquals(2 * length, encode.getBytes());
+    assertEquals(length, encode.getSize().getMean(), 0);
+    // within a bucket
+    assertTrue(encode.getSize().getP50() >= length);
+    assertTrue(encode.getSize().getP50() < length * 1.07);
+    assertEquals(2, encode.getLatency().getCount());
+
+    assertEquals(1, metrics.getDecode().getCount());
+    assertEquals(length, metrics.getDecode().getBytes());
+
+    Map<String, Long> types = metrics.getTypes();
+    assertEquals(Long.valueOf(6), types.get("int"));
+    assertEquals(Long.valueOf(3), types.get("string"));
+    assertEquals(Long.valueOf(3), types.get("array"));
+
+    metrics.reset();
+    assertEquals(0, metrics.getEncode().getCount());
+    assertTrue(metrics.getTypes().isEmpty());
+  }
+
+  @Test
+  public void testProjectedDecode() {
+    BSONMessageCodec codec = new BSONMessageCodec(new BSONCodecOptions().setMetricsEnabled(true));
+    Buffer buffer = Buffer.buffer();
+    codec.encodeToWire(buffer, document());
+
+    codec.decodeFromWire(0, buffer, Arrays.asList("a", "s"));
+    codec.decodeFromWire(0, buffer, Projection.compile(Arrays.asList("l")));
+
+    assertEquals(2, codec.getMetrics().getDecode().getCount());
+    assertEquals(2 * buffer.length(), codec.getMetrics().getDecode().getBytes());
+    assertEquals(2, codec.getMetrics().getDecode().getLatency().getCount());
+  }
+
+  @Test
+  public void testHistogramBuckets() {
+    long[] values = {0, 1, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE};
+    for (long value : values) {
+      int index = BSONCodecMetrics.Histogram.index(value);
+      assertTrue(BSONCodecMetrics.Histogram.lowerBound(index) <= value);
+      assertTrue(BSONCodecMetrics.Histogram.upperBound(index) >= value);
+    }
+    assertEquals(BSONCodecMetrics.Histogram.upperBound(BSONCodecMetrics.Histogram.index(31)) + 1,
+        BSONCodecMetrics.Histogram.lowerBound(BSONCodecMetrics.Histogram.index(32)));
+  }
+
+  @Test
+  public void testMXBean() throws Exception {
+    BSONMessageCodec codec = new BSONMessageCodec(new BSONCodecOptions().setMetricsEnabled(true));
+    codec.encodeToWire(Buffer.buffer(), document());
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("com.jetdrone:type=BSONCodec,name=test");
+    server.registerMBean(codec.getMetrics(), name);
+    try {
+      CompositeData encode = (CompositeData) server.getAttribute(name, "Encode");
+      assertEquals(1L, encode.get("count"));
+      assertEquals(1L, ((CompositeData) encode.get("latency")).get("count"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+}
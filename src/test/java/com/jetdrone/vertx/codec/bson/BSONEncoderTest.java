@@ -0,0 +1,114 @@
+package com.jetdrone.vertx.codec.bson;
+
+import com.jetdrone.vertx.codec.bson.impl.LE;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.EncodeException;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.Collections;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class BSONEncoderTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  // a type only used by this test so the registration does not leak into other tests
+  static final class Money {
+    final long cents;
+
+    Money(long cents) {
+      this.cents = cents;
+    }
+  }
+
+  static class Shape {
+  }
+
+  static final class Circle extends Shape {
+  }
+
+  @Test
+  public void testCustomEncoder() {
+    BSONMessageCodec.registerEncoder(Money.class, new BSONEncoder<Money>() {
+      @Override
+      public byte encode(Buffer buffer, Money value) {
+        LE.appendLong(buffer, value.cents);
+        return BSONMessageCodec.INT64;
+      }
+
+      @Override
+      public int size(Money value) {
+        return 8;
+      }
+    });
+
+    BSONDocument document = new BSONDocument();
+    document.put("price", new Money(1250));
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, document);
+    assertEquals(buffer.length(), BSONMessageCodec.encodedSize(document));
+    assertEquals(1250L, BSON.decodeFromWire(0, buffer).get("price"));
+  }
+
+  @Test
+  public void testEncoderAppliesToSubclasses() {
+    BSONMessageCodec.registerEncoder(Shape.class, (buffer, value) -> {
+      LE.appendString(buffer, value.getClass().getSimpleName());
+      return BSONMessageCodec.STRING;
+    });
+
+    BSONDocument document = new BSONDocument();
+    document.put("shape", new Circle());
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, document);
+    // the default size encodes into a scratch buffer
+    assertEquals(buffer.length(), BSONMessageCodec.encodedSize(document));
+    assertEquals("Circle", BSON.decodeFromWire(0, buffer).get("shape"));
+  }
+
+  @Test
+  public void testInterfacesResolveToBuiltInEncoders() {
+    BSONDocument document = new BSONDocument();
+    document.put("map", new TreeMap<>(Collections.singletonMap("a", 1)));
+    document.put("list", Collections.singletonList(2));
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, document);
+    assertEquals(document, BSON.decodeFromWire(0, buffer));
+  }
+
+  @Test(expected = EncodeException.class)
+  public void testUnknownType() {
+    BSONDocument document = new BSONDocument();
+    document.put("uri", URI.create("http://localhost"));
+    BSON.encodeToWire(Buffer.buffer(), document);
+  }
+
+  @Test
+  public void testRegistrationAfterLookup() {
+    BSONDocument document = new BSONDocument();
+    document.put("n", BigInteger.TEN);
+
+    try {
+      BSON.encodeToWire(Buffer.buffer(), document);
+      fail();
+    } catch (EncodeException e) {
+      // not registered yet
+    }
+
+    BSONMessageCodec.registerEncoder(BigInteger.class, (buffer, value) -> {
+      LE.appendString(buffer, value.toString());
+      return BSONMessageCodec.STRING;
+    });
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, document);
+    assertEquals("10", BSON.decodeFromWire(0, buffer).get("n"));
+  }
+}
@@ -0,0 +1,214 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BSONEntityTest {
+
+  @BSONEntity
+  public static class Address {
+    String city;
+    int zip;
+  }
+
+  @BSONEntity
+  public static class Person {
+    ObjectId _id;
+    String name;
+    int age;
+    long visits;
+    double score;
+    boolean active;
+    Boolean verified;
+    short level;
+    Date created;
+    byte[] avatar;
+    Address address;
+    List<String> tags;
+    transient String cached;
+
+    private String nickname;
+
+    public String getNickname() {
+      return nickname;
+    }
+
+    public void setNickname(String nickname) {
+      this.nickname = nickname;
+    }
+  }
+
+  public static class Base {
+    String kind;
+    private long version;
+
+    public long getVersion() {
+      return version;
+    }
+
+    public void setVersion(long version) {
+      this.version = version;
+    }
+  }
+
+  @BSONEntity
+  public static class Sheet extends Base {
+    int[] scores;
+    double[] weights;
+    String[] labels;
+    List<String> names;
+    List<Address> addresses;
+    List<int[]> matrix;
+  }
+
+  private static Person person() {
+    Person person = new Person();
+    person._id = new ObjectId();
+    person.name = "Paulo";
+    person.age = 33;
+    person.visits = 1L << 40;
+    person.score = 0.5;
+    person.active = true;
+    person.level = 7;
+    person.created = new Date(1000);
+    person.avatar = new byte[]{1, 2, 3};
+    person.address = new Address();
+    person.address.city = "Lisboa";
+    person.address.zip = 1000;
+    person.tags = Arrays.asList("a", "b");
+    person.cached = "not sent";
+    person.setNickname("pmlopes");
+    return person;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    BSONEntityTest_PersonBSONCodec codec = new BSONEntityTest_PersonBSONCodec();
+    Person person = person();
+
+    Buffer buffer = Buffer.buffer();
+    codec.encodeToWire(buffer, person);
+    Person decoded = codec.decodeFromWire(0, buffer);
+
+    assertEquals(person._id, decoded._id);
+    assertEquals("Paulo", decoded.name);
+    assertEquals(33, decoded.age);
+    assertEquals(1L << 40, decoded.visits);
+    assertEquals(0.5, decoded.score, 0);
+    assertTrue(decoded.active);
+    assertNull(decoded.verified);
+    assertEquals(7, decoded.level);
+    assertEquals(new Date(1000), decoded.created);
+    assertArrayEquals(new byte[]{1, 2, 3}, decoded.avatar);
+    assertEquals("Lisboa", decoded.address.city);
+    assertEquals(1000, decoded.address.zip);
+    assertEquals(Arrays.asList("a", "b"), decoded.tags);
+    assertNull(decoded.cached);
+    assertEquals("pmlopes", decoded.getNickname());
+  }
+
+  @Test
+  public void testSameBytesAsDocument() {
+    Person person = person();
+
+    BSONDocument address = new BSONDocument();
+    address.put("city", "Lisboa");
+    address.put("zip", 1000);
+
+    BSONDocument document = new BSONDocument();
+    document.put("_id", person._id);
+    document.put("name", "Paulo");
+    document.put("age", 33);
+    document.put("visits", 1L << 40);
+    document.put("score", 0.5);
+    document.put("active", true);
+    document.put("verified", null);
+    document.put("level", 7);
+    document.put("created", new Date(1000));
+    document.put("avatar", new byte[]{1, 2, 3});
+    document.put("address", address);
+    document.put("tags", Arrays.asList("a", "b"));
+    document.put("nickname", "pmlopes");
+
+    Buffer expected = Buffer.buffer();
+    new BSONMessageCodec().encodeToWire(expected, document);
+
+    Buffer buffer = Buffer.buffer();
+    new BSONEntityTest_PersonBSONCodec().encodeToWire(buffer, person);
+    assertEquals(expected, buffer);
+  }
+
+  @Test
+  public void testUnknownElementsAreSkipped() {
+    BSONDocument document = new BSONDocument();
+    document.put("extra", new BSONDocument());
+    document.put("city", "Porto");
+    document.put("zip", null);
+
+    Buffer buffer = Buffer.buffer();
+    new BSONMessageCodec().encodeToWire(buffer, document);
+
+    Address address = new BSONEntityTest_AddressBSONCodec().decodeFromWire(0, buffer);
+    assertEquals("Porto", address.city);
+    assertEquals(0, address.zip);
+  }
+
+  @Test
+  public void testArraysListsAndInheritedFields() {
+    Sheet sheet = new Sheet();
+    sheet.kind = "sheet";
+    sheet.setVersion(3);
+    sheet.scores = new int[20];
+    for (int i = 0; i < sheet.scores.length; i++) {
+      sheet.scores[i] = i * i;
+    }
+    sheet.weights = new double[]{0.5, -1};
+    sheet.labels = new String[]{"x", null};
+    sheet.names = Arrays.asList("a", "b", "c");
+    Address address = new Address();
+    address.city = "Porto";
+    sheet.addresses = Arrays.asList(address, null);
+    sheet.matrix = Arrays.asList(new int[]{1, 2}, new int[0]);
+
+    BSONEntityTest_SheetBSONCodec codec = new BSONEntityTest_SheetBSONCodec();
+    Buffer buffer = Buffer.buffer();
+    codec.encodeToWire(buffer, sheet);
+    Sheet decoded = codec.decodeFromWire(0, buffer);
+
+    assertEquals("sheet", decoded.kind);
+    assertEquals(3, decoded.getVersion());
+    assertArrayEquals(sheet.scores, decoded.scores);
+    assertArrayEquals(sheet.weights, decoded.weights, 0);
+    assertArrayEquals(sheet.labels, decoded.labels);
+    assertEquals(sheet.names, decoded.names);
+    assertEquals("Porto", decoded.addresses.get(0).city);
+    assertNull(decoded.addresses.get(1));
+    assertEquals(2, decoded.matrix.size());
+    assertArrayEquals(new int[]{1, 2}, decoded.matrix.get(0));
+    assertArrayEquals(new int[0], decoded.matrix.get(1));
+
+    // the same bytes as the generic codec, inherited fields first
+    BSONDocument document = new BSONDocument();
+    document.put("kind", "sheet");
+    document.put("version", 3L);
+    document.put("scores", sheet.scores);
+    document.put("weights", sheet.weights);
+    document.put("labels", Arrays.asList("x", null));
+    document.put("names", sheet.names);
+    BSONDocument city = new BSONDocument();
+    city.put("city", "Porto");
+    city.put("zip", 0);
+    document.put("addresses", Arrays.asList(city, null));
+    document.put("matrix", sheet.matrix);
+
+    Buffer expected = Buffer.buffer();
+    new BSONMessageCodec().encodeToWire(expected, document);
+    assertEquals(expected, buffer);
+  }
+}
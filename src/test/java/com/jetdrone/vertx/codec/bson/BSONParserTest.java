@@ -0,0 +1,200 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.streams.ReadStream;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class BSONParserTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  private static List<BSONDocument> documents(int count) {
+    List<BSONDocument> documents = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      BSONDocument json = new BSONDocument();
+      json.put("i", i);
+      json.put("pad", new String(new char[i * 7]).replace('\0', 'x'));
+      documents.add(json);
+    }
+    return documents;
+  }
+
+  private static Buffer concat(List<BSONDocument> documents) {
+    Buffer buffer = Buffer.buffer();
+    for (BSONDocument document : documents) {
+      BSON.encodeToWire(buffer, document);
+    }
+    return buffer;
+  }
+
+  @Test
+  public void testArbitraryChunks() {
+    List<BSONDocument> expected = documents(50);
+    Buffer stream = concat(expected);
+
+    List<BSONDocument> received = new ArrayList<>();
+    AtomicBoolean ended = new AtomicBoolean();
+    BSONParser parser = new BSONParser();
+    parser.handler(received::add);
+    parser.endHandler(v -> ended.set(true));
+
+    Random random = new Random(7);
+    int pos = 0;
+    while (pos < stream.length()) {
+      int end = Math.min(stream.length(), pos + 1 + random.nextInt(40));
+      parser.handle(stream.getBuffer(pos, end));
+      pos = end;
+    }
+    parser.end();
+
+    assertEquals(expected, received);
+    assertTrue(ended.get());
+  }
+
+  @Test
+  public void testTruncatedStream() {
+    Buffer stream = concat(documents(2));
+
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    List<BSONDocument> received = new ArrayList<>();
+    BSONParser parser = new BSONParser();
+    parser.handler(received::add);
+    parser.exceptionHandler(error::set);
+
+    parser.handle(stream.getBuffer(0, stream.length() - 1));
+    parser.end();
+
+    assertEquals(1, received.size());
+    assertTrue(error.get() instanceof DecodeException);
+  }
+
+  @Test
+  public void testFailureStopsParsingUntilReset() {
+    Buffer stream = concat(documents(2));
+
+    List<Throwable> errors = new ArrayList<>();
+    List<BSONDocument> received = new ArrayList<>();
+    BSONParser parser = new BSONParser();
+    parser.handler(received::add);
+    parser.exceptionHandler(errors::add);
+
+    // a length prefix of 2 followed by a document split over the chunks
+    parser.handle(Buffer.buffer().appendInt(Integer.reverseBytes(2)).appendBuffer(stream, 0, 10));
+    parser.handle(stream.getBuffer(10, stream.length()));
+    parser.end();
+
+    assertEquals(0, received.size());
+    assertEquals(1, errors.size());
+
+    parser.reset();
+    parser.handle(stream);
+    assertEquals(2, received.size());
+  }
+
+  @Test
+  public void testDecodeErrorGoesToExceptionHandler() {
+    // a single element of the unknown type 0x7f
+    Buffer corrupt = Buffer.buffer()
+        .appendInt(Integer.reverseBytes(9))
+        .appendByte((byte) 0x7f).appendByte((byte) 'a').appendByte((byte) 0)
+        .appendByte((byte) 0).appendByte((byte) 0);
+
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    List<BSONDocument> received = new ArrayList<>();
+    BSONParser parser = new BSONParser();
+    parser.handler(received::add);
+    parser.exceptionHandler(error::set);
+
+    parser.handle(corrupt.appendBuffer(concat(documents(1))));
+
+    assertTrue(error.get() instanceof DecodeException);
+    assertEquals(0, received.size());
+  }
+
+  @Test
+  public void testMaxDocumentLength() {
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    BSONParser parser = new BSONParser().setMaxDocumentLength(1024);
+    parser.handler(document -> fail());
+    parser.exceptionHandler(error::set);
+
+    // fails on the prefix, without waiting for the announced megabyte
+    parser.handle(Buffer.buffer().appendInt(Integer.reverseBytes(1024 * 1024)));
+
+    assertTrue(error.get() instanceof DecodeException);
+  }
+
+  @Test
+  public void testPausePropagatesToSource() {
+    List<BSONDocument> expected = documents(3);
+    Buffer stream = concat(expected);
+
+    FakeStream source = new FakeStream();
+    BSONParser parser = BSONParser.newParser(source);
+
+    List<BSONDocument> received = new ArrayList<>();
+    parser.handler(document -> {
+      received.add(document);
+      // slow consumer, one document at a time
+      parser.pause();
+    });
+
+    source.handler.handle(stream);
+    assertEquals(1, received.size());
+    assertTrue(source.paused);
+
+    parser.resume();
+    assertEquals(2, received.size());
+    assertTrue(source.paused);
+
+    parser.resume();
+    assertEquals(expected, received);
+
+    parser.resume();
+    assertFalse(source.paused);
+  }
+
+  private static class FakeStream implements ReadStream<Buffer> {
+
+    Handler<Buffer> handler;
+    boolean paused;
+
+    @Override
+    public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+      this.handler = handler;
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> pause() {
+      paused = true;
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> resume() {
+      paused = false;
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> endHandler(Handler<Void> endHandler) {
+      return this;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BSONPathTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  private static Buffer encode() {
+    BSONDocument tenant = new BSONDocument();
+    tenant.put("id", 42);
+    tenant.put("name", "acme");
+
+    BSONDocument meta = new BSONDocument();
+    meta.put("tenant", tenant);
+    meta.put("ids", Arrays.asList(7L, 8L));
+
+    BSONDocument item = new BSONDocument();
+    item.put("sku", "x1");
+
+    BSONDocument document = new BSONDocument();
+    document.put("type", "order");
+    document.put("meta", meta);
+    document.put("items", Arrays.asList(item));
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, document);
+    return buffer;
+  }
+
+  @Test
+  public void testScalarValues() {
+    Buffer buffer = encode();
+    assertEquals("order", BSONPath.get(buffer, "type"));
+    assertEquals(42, BSONPath.get(buffer, "meta.tenant.id"));
+    assertEquals(8L, BSONPath.get(buffer, "meta.ids.1"));
+    assertEquals("x1", BSONPath.get(buffer, "items.0.sku"));
+  }
+
+  @Test
+  public void testMissingPaths() {
+    Buffer buffer = encode();
+    assertNull(BSONPath.get(buffer, "meta.tenant.missing"));
+    assertNull(BSONPath.get(buffer, "type.length"));
+    assertNull(BSONPath.get(buffer, "meta.ids.2"));
+    assertNull(BSONPath.get(buffer, "meta.tenan"));
+    assertEquals(BSONMessageCodec.END_OF_DOCUMENT, BSONPath.compile("nope").type(buffer, 0));
+    assertEquals(BSONMessageCodec.INT32, BSONPath.compile("meta.tenant.id").type(buffer, 0));
+  }
+
+  @Test
+  public void testSliceIsForwardedWithoutDecoding() {
+    Buffer buffer = encode();
+    Buffer slice = BSONPath.slice(buffer, "meta.tenant");
+
+    BSONDocument tenant = BSON.decodeFromWire(0, slice);
+    assertEquals(42, tenant.get("id"));
+    assertEquals("acme", tenant.get("name"));
+
+    // a view, not a copy: type + "id\0" precede the value
+    int field = BSONPath.compile("meta.tenant.id").find(buffer, 0);
+    buffer.setInt(field + 4, Integer.reverseBytes(43));
+    assertEquals(43, new RawBSONDocument(slice).get("id"));
+
+    assertNull(BSONPath.slice(buffer, "type"));
+    assertTrue(BSONPath.get(buffer, "meta.tenant") instanceof RawBSONDocument);
+    assertTrue(BSONPath.get(buffer, "meta.ids") instanceof RawBSONList);
+  }
+
+  @Test
+  public void testDocumentInsideLargerBuffer() {
+    Buffer buffer = Buffer.buffer().appendString("junk").appendBuffer(encode());
+    assertEquals(42, BSONPath.compile("meta.tenant.id").get(buffer, 4));
+  }
+}
@@ -0,0 +1,106 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static com.jetdrone.vertx.codec.bson.BSONMessageCodec.*;
+import static org.junit.Assert.*;
+
+public class BSONReaderTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  private static Buffer sample() {
+    BSONDocument json = new BSONDocument();
+    json.put("id", 7);
+    json.put("name", "ação");
+    BSONDocument meta = new BSONDocument();
+    meta.put("tenant", 42L);
+    meta.put("skip", Arrays.asList(1, 2, 3));
+    meta.put("ratio", 0.5);
+    json.put("meta", meta);
+    json.put("tags", Arrays.asList("a", "b"));
+    json.put("when", new Date(1000));
+    json.put("oid", new ObjectId("4d88e15b60f486e428412dc9"));
+    json.put("flag", true);
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, json);
+    return buffer;
+  }
+
+  @Test
+  public void testReadAll() {
+    Buffer buffer = sample();
+    BSONReader reader = new BSONReader(buffer);
+
+    reader.startDocument();
+    assertEquals(INT32, reader.nextType());
+    assertEquals("id", reader.readName());
+    assertEquals(7, reader.readInt32());
+
+    assertEquals(STRING, reader.nextType());
+    assertEquals("name", reader.readName());
+    assertEquals("ação", reader.readString());
+
+    assertEquals(EMBEDDED_DOCUMENT, reader.nextType());
+    assertEquals("meta", reader.readName());
+    reader.startDocument();
+    assertEquals(INT64, reader.nextType());
+    assertEquals("tenant", reader.readName());
+    assertEquals(42L, reader.readInt64());
+    // leave the rest of the sub document unread
+    reader.endDocument();
+
+    assertEquals(ARRAY, reader.nextType());
+    reader.skipName();
+    reader.startArray();
+    assertEquals(STRING, reader.nextType());
+    assertEquals("0", reader.readName());
+    assertEquals("a", reader.readString());
+    assertEquals(STRING, reader.nextType());
+    assertEquals("b", reader.readString());
+    assertEquals(END_OF_DOCUMENT, reader.nextType());
+    reader.endArray();
+
+    assertEquals(UTC_DATETIME, reader.nextType());
+    assertEquals(1000L, reader.readDateTime());
+    assertEquals(OBJECT_ID, reader.nextType());
+    assertEquals(new ObjectId("4d88e15b60f486e428412dc9"), reader.readObjectId());
+    assertEquals(BOOLEAN, reader.nextType());
+    assertTrue(reader.readBoolean());
+
+    assertEquals(END_OF_DOCUMENT, reader.nextType());
+    reader.endDocument();
+    assertEquals(buffer.length(), reader.position());
+  }
+
+  @Test
+  public void testSkipUntilField() {
+    BSONReader reader = new BSONReader(sample());
+
+    reader.startDocument();
+    Object flag = null;
+    while (reader.nextType() != END_OF_DOCUMENT) {
+      if ("flag".equals(reader.readName())) {
+        flag = reader.readValue();
+      }
+    }
+    reader.endDocument();
+
+    assertEquals(true, flag);
+  }
+
+  @Test(expected = DecodeException.class)
+  public void testTypeMismatch() {
+    BSONReader reader = new BSONReader(sample());
+
+    reader.startDocument();
+    reader.nextType();
+    reader.readString();
+  }
+}
@@ -0,0 +1,79 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BSONWriterTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  @Test
+  public void testWriterMatchesCodec() {
+    ObjectId oid = new ObjectId();
+
+    BSONDocument json = new BSONDocument();
+    json.put("_id", oid);
+    json.put("id", 7);
+    json.put("ratio", 0.5);
+    json.put("name", "ação");
+    BSONDocument meta = new BSONDocument();
+    meta.put("tenant", 42L);
+    meta.put("ok", true);
+    json.put("meta", meta);
+    json.put("matrix", Arrays.asList(Arrays.asList(1, 2), new BSONDocument()));
+    json.put("when", new Date(1000));
+    json.put("nil", null);
+
+    Buffer expected = Buffer.buffer();
+    BSON.encodeToWire(expected, json);
+
+    BSONWriter writer = new BSONWriter(Buffer.buffer().appendString("prefix"));
+    writer.writeStartDocument()
+        .writeObjectId("_id", oid)
+        .writeInt32("id", 7)
+        .writeDouble("ratio", 0.5)
+        .writeString("name", "ação")
+        .writeStartDocument("meta")
+        .writeInt64("tenant", 42L)
+        .writeBoolean("ok", true)
+        .writeEndDocument()
+        .writeStartArray("matrix")
+        .writeStartArray()
+        .writeInt32(1)
+        .writeInt32(2)
+        .writeEndArray()
+        .writeStartDocument()
+        .writeEndDocument()
+        .writeEndArray()
+        .writeName("when").writeValue(new Date(1000))
+        .writeName("nil").writeNull()
+        .writeEndDocument();
+
+    RawBSONDocument document = writer.toDocument();
+    assertArrayEquals(expected.getBytes(), document.getBuffer().getBytes());
+    assertEquals(json, document);
+  }
+
+  @Test
+  public void testNewObjectId() {
+    BSONWriter writer = new BSONWriter();
+    writer.writeStartDocument().writeNewObjectId("_id").writeInt32("n", 1).writeEndDocument();
+
+    RawBSONDocument document = writer.toDocument();
+    assertEquals(5 + (1 + 4 + 12) + (1 + 2 + 4), document.getBuffer().length());
+    ObjectId oid = (ObjectId) document.get("_id");
+    assertEquals(new Date().getTime() / 1000, oid.getTimestamp(), 5);
+    assertEquals(1, document.get("n"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testValueWithoutName() {
+    new BSONWriter().writeStartDocument().writeInt32(1);
+  }
+}
@@ -0,0 +1,103 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class ByteBufEncodeTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  private static BSONDocument document() {
+    BSONDocument nested = new BSONDocument();
+    nested.put("name", "ação 😀");
+    nested.put("when", new Date(1000));
+
+    BSONDocument document = new BSONDocument();
+    document.put("int", 1);
+    document.put("long", 2L);
+    document.put("double", 3.5);
+    document.put("nested", nested);
+    document.put("list", Arrays.asList("a", "€", 3));
+    document.put("uuid", new UUID(1, 2));
+    document.put("bytes", new byte[]{1, 2, 3});
+    document.put("regex", Pattern.compile("^x", Pattern.CASE_INSENSITIVE));
+    return document;
+  }
+
+  @Test
+  public void testSameBytesAsHeapEncoding() {
+    Buffer expected = Buffer.buffer();
+    BSON.encodeToWire(expected, document());
+
+    ByteBuf buf = BSON.encodeToByteBuf(document());
+    try {
+      assertTrue(buf.isDirect());
+      assertEquals(expected.length(), buf.readableBytes());
+      // allocated with the exact size
+      assertEquals(buf.readableBytes(), buf.capacity());
+
+      byte[] bytes = new byte[buf.readableBytes()];
+      buf.getBytes(buf.readerIndex(), bytes);
+      assertArrayEquals(expected.getBytes(), bytes);
+      assertEquals(document().get("list"), BSON.decodeFromWire(0, Buffer.buffer(buf)).get("list"));
+    } finally {
+      assertTrue(buf.release());
+    }
+  }
+
+  static final class Failing {
+  }
+
+  @Test
+  public void testReleasedOnFailure() {
+    BSONMessageCodec.registerEncoder(Failing.class, new BSONEncoder<Failing>() {
+      @Override
+      public byte encode(Buffer buffer, Failing value) {
+        throw new IllegalStateException();
+      }
+
+      @Override
+      public int size(Failing value) {
+        return 0;
+      }
+    });
+
+    BSONDocument document = new BSONDocument();
+    document.put("bad", new Failing());
+
+    ByteBuf[] allocated = new ByteBuf[1];
+    AbstractByteBufAllocator allocator = new AbstractByteBufAllocator() {
+      @Override
+      protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        return allocated[0] = Unpooled.directBuffer(initialCapacity, maxCapacity);
+      }
+
+      @Override
+      public boolean isDirectBufferPooled() {
+        return false;
+      }
+    };
+
+    try {
+      BSON.encodeToByteBuf(document, allocator);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals(0, allocated[0].refCnt());
+    }
+  }
+}
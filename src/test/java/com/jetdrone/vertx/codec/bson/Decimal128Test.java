@@ -0,0 +1,120 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class Decimal128Test {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  @Test
+  public void testEncoding() {
+    assertBits("0", 0x3040000000000000L, 0);
+    assertBits("-0", 0xB040000000000000L, 0);
+    assertBits("1", 0x3040000000000000L, 1);
+    assertBits("-1", 0xB040000000000000L, 1);
+    assertBits("0.1", 0x303E000000000000L, 1);
+    assertBits("1E+3", 0x3046000000000000L, 1);
+    assertBits("9.999999999999999999999999999999999E+6144", 0x5FFFED09BEAD87C0L, 0x378D8E63FFFFFFFFL);
+    assertBits("NaN", 0x7C00000000000000L, 0);
+    assertBits("Infinity", 0x7800000000000000L, 0);
+    assertBits("-Infinity", 0xF800000000000000L, 0);
+  }
+
+  @Test
+  public void testToString() {
+    for (String value : new String[]{"0", "-0", "1", "-1.5", "0.001", "1.23E+40", "1E-6176", "NaN", "-Infinity",
+        "9.999999999999999999999999999999999E+6144", "-1234567890123456789012345678901234"}) {
+      assertEquals(value, Decimal128.parse(value).toString());
+    }
+  }
+
+  @Test
+  public void testClamp() {
+    // the exponent is lowered by adding zeros
+    assertBits("1E+6112", 0x5FFE000000000000L, 10);
+    // trailing zeros are dropped to fit in 34 digits
+    assertEquals("1.000000000000000000000000000000000E+34",
+        Decimal128.parse("10000000000000000000000000000000000").toString());
+    assertEquals("0E-6176", Decimal128.parse("0E-6200").toString());
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testTooManyDigits() {
+    Decimal128.parse("1.0000000000000000000000000000000001");
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testExponentTooSmall() {
+    Decimal128.parse("1E-6177");
+  }
+
+  @Test
+  public void testLongFastPath() {
+    assertEquals(Decimal128.parse("-123.45"), Decimal128.valueOf(-12345, 2));
+    assertEquals(Decimal128.parse("-9223372036854775808"), Decimal128.valueOf(Long.MIN_VALUE, 0));
+    assertEquals(new BigDecimal("-123.45"), Decimal128.valueOf(-12345, 2).bigDecimalValue());
+    assertEquals(-123.45, Decimal128.valueOf(-12345, 2).doubleValue(), 0);
+  }
+
+  @Test
+  public void testLongValue() {
+    assertEquals(9007199254740993L, Decimal128.parse("9007199254740993").longValue());
+    assertEquals(Long.MIN_VALUE, Decimal128.parse("-9223372036854775808").longValue());
+    assertEquals(-12, Decimal128.parse("-12.9").intValue());
+    assertEquals(Long.MAX_VALUE, Decimal128.POSITIVE_INFINITY.longValue());
+    assertEquals(0, Decimal128.NaN.intValue());
+  }
+
+  @Test
+  public void testEncodeDecode() {
+    BSONDocument json = new BSONDocument();
+    json.put("d", Decimal128.parse("12.34"));
+    json.put("b", new BigDecimal("-0.5"));
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, json);
+    assertEquals(BSONMessageCodec.encodedSize(json), buffer.length());
+
+    Map<String, Object> document = BSON.decodeFromWire(0, buffer);
+    assertEquals(Decimal128.parse("12.34"), document.get("d"));
+    assertEquals(Decimal128.parse("-0.5"), document.get("b"));
+
+    BSONMessageCodec bigDecimals = new BSONMessageCodec(new BSONCodecOptions().setDecimalsAsBigDecimal(true));
+    assertEquals(new BigDecimal("-0.5"), bigDecimals.decodeFromWire(0, buffer).get("b"));
+  }
+
+  @Test
+  public void testReaderWriter() {
+    BSONWriter writer = new BSONWriter();
+    writer.writeStartDocument().writeDecimal128("d", Decimal128.NaN).writeEndDocument();
+
+    BSONReader reader = new BSONReader(writer.getBuffer());
+    reader.startDocument();
+    assertEquals(BSONMessageCodec.DECIMAL128, reader.nextType());
+    assertEquals("d", reader.readName());
+    assertTrue(reader.readDecimal128().isNaN());
+  }
+
+  @Test(expected = DecodeException.class)
+  public void testNaNAsBigDecimal() {
+    BSONDocument json = new BSONDocument();
+    json.put("d", Decimal128.NaN);
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, json);
+    new BSONMessageCodec(new BSONCodecOptions().setDecimalsAsBigDecimal(true)).decodeFromWire(0, buffer);
+  }
+
+  private static void assertBits(String value, long high, long low) {
+    Decimal128 decimal = Decimal128.parse(value);
+    assertEquals(value, high, decimal.getHigh());
+    assertEquals(value, low, decimal.getLow());
+  }
+}
@@ -0,0 +1,61 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class EncodedSizeTest {
+
+  private static BSONDocument sample() {
+    BSONDocument json = new BSONDocument();
+    json.put("double", 5.05);
+    json.put("ascii", "hello");
+    json.put("utf8 ñ", "ação € 😀 \uD800");
+    BSONDocument sub = new BSONDocument();
+    sub.put("a", true);
+    sub.put("list", Arrays.asList(1, 2L, null, "x"));
+    json.put("sub", sub);
+    json.put("uuid", UUID.randomUUID());
+    json.put("bytes", new byte[]{1, 2, 3});
+    json.put("buffer", Buffer.buffer("udef"));
+    json.put("md5", (MD5) () -> new byte[16]);
+    json.put("oid", new ObjectId());
+    json.put("date", new Date());
+    json.put("ts", new Timestamp(258));
+    json.put("regex", Pattern.compile("^a.*b$", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE));
+    json.put("min", Key.MIN);
+    json.put("max", Key.MAX);
+    return json;
+  }
+
+  @Test
+  public void testEncodedSizeIsExact() {
+    BSONDocument json = sample();
+
+    Buffer buffer = Buffer.buffer();
+    new BSONMessageCodec().encodeToWire(buffer, json);
+
+    assertEquals(buffer.length(), BSONMessageCodec.encodedSize(json));
+  }
+
+  @Test
+  public void testPresizedEncodingIsIdentical() {
+    BSONDocument json = sample();
+
+    Buffer buffer = Buffer.buffer();
+    new BSONMessageCodec().encodeToWire(buffer, json);
+
+    Buffer presized = Buffer.buffer(4);
+    new BSONMessageCodec(new BSONCodecOptions().setPresize(true)).encodeToWire(presized, json);
+
+    assertArrayEquals(buffer.getBytes(), presized.getBytes());
+  }
+}
@@ -0,0 +1,57 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.EncodeException;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class FieldNameCacheTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  @Test
+  public void testDecodedKeysAreCanonical() {
+    BSONDocument json = new BSONDocument();
+    json.put("tenant", 1);
+    json.put("ñandú", 2);
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, json);
+
+    Iterator<String> first = BSON.decodeFromWire(0, buffer).keySet().iterator();
+    Iterator<String> second = BSON.decodeFromWire(0, buffer).keySet().iterator();
+
+    String tenant = first.next();
+    assertEquals("tenant", tenant);
+    assertSame(tenant, second.next());
+
+    String utf8 = first.next();
+    assertEquals("ñandú", utf8);
+    assertSame(utf8, second.next());
+  }
+
+  @Test(expected = EncodeException.class)
+  public void testKeyWithNulIsRejected() {
+    BSONDocument json = new BSONDocument();
+    json.put("a\0b", 1);
+
+    BSON.encodeToWire(Buffer.buffer(), json);
+  }
+
+  @Test
+  public void testManyKeys() {
+    // far more names than the tables hold, each must still encode and decode to itself
+    BSONDocument json = new BSONDocument();
+    for (int i = 0; i < 20000; i++) {
+      json.put("field" + i, i);
+    }
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, json);
+    assertEquals(BSONMessageCodec.encodedSize(json), buffer.length());
+    assertEquals(json, BSON.decodeFromWire(0, buffer));
+  }
+}
@@ -0,0 +1,123 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ImmutableBSONDocumentTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+  private static final BSONMessageCodec IMMUTABLE = new BSONMessageCodec(new BSONCodecOptions().setImmutableDelivery(true));
+
+  private static BSONDocument document() {
+    BSONDocument nested = new BSONDocument();
+    nested.put("a", 1);
+
+    BSONDocument document = new BSONDocument();
+    document.put("name", "doc");
+    document.put("nested", nested);
+    document.put("list", new ArrayList<>(Arrays.asList(nested, 2)));
+    document.put("bytes", new byte[]{1, 2});
+    return document;
+  }
+
+  @Test
+  public void testSnapshotIsDeepAndDetached() {
+    BSONDocument document = document();
+    ImmutableBSONDocument snapshot = document.snapshot();
+
+    assertEquals(document.keySet(), snapshot.keySet());
+    assertEquals("doc", snapshot.get("name"));
+    assertEquals(snapshot.get("nested"), document.get("nested"));
+
+    ((Map<String, Object>) document.get("nested")).put("a", 2);
+    ((List<Object>) document.get("list")).add(3);
+    ((byte[]) document.get("bytes"))[0] = 9;
+
+    assertEquals(1, ((Map<?, ?>) snapshot.get("nested")).get("a"));
+    assertEquals(2, ((List<?>) snapshot.get("list")).size());
+    assertEquals(1, ((byte[]) snapshot.get("bytes"))[0]);
+    assertTrue(snapshot.get("nested") instanceof ImmutableBSONDocument);
+  }
+
+  @Test
+  public void testSnapshotIsReadOnly() {
+    ImmutableBSONDocument snapshot = document().snapshot();
+    assertThrows(() -> snapshot.put("x", 1));
+    assertThrows(() -> snapshot.remove("name"));
+    assertThrows(snapshot::clear);
+    assertThrows(() -> snapshot.entrySet().iterator().next().setValue(1));
+    assertThrows(() -> ((Map<String, Object>) snapshot.get("nested")).put("b", 1));
+    assertThrows(() -> ((List<Object>) snapshot.get("list")).add(1));
+  }
+
+  @Test
+  public void testStructuralSharing() {
+    ImmutableBSONDocument snapshot = document().snapshot();
+    assertSame(snapshot, snapshot.snapshot());
+
+    ImmutableBSONDocument changed = snapshot.with("name", "other");
+    assertEquals("doc", snapshot.get("name"));
+    assertEquals("other", changed.get("name"));
+    assertSame(snapshot.get("nested"), changed.get("nested"));
+    assertSame(snapshot.get("list"), changed.get("list"));
+
+    ImmutableBSONDocument added = snapshot.with("extra", true);
+    assertEquals(5, added.size());
+    assertEquals("extra", new ArrayList<>(added.keySet()).get(4));
+
+    ImmutableBSONDocument removed = added.without("nested");
+    assertEquals(Arrays.asList("name", "list", "bytes", "extra"), new ArrayList<>(removed.keySet()));
+    assertSame(snapshot.get("list"), removed.get("list"));
+  }
+
+  @Test
+  public void testLargeDocumentLookups() {
+    BSONDocument document = new BSONDocument();
+    for (int i = 0; i < 50; i++) {
+      document.put("k" + i, i);
+    }
+    ImmutableBSONDocument snapshot = document.snapshot();
+    for (int i = 0; i < 50; i++) {
+      assertEquals(i, snapshot.get("k" + i));
+    }
+    assertFalse(snapshot.containsKey("k50"));
+    assertEquals(document, snapshot);
+    assertEquals(document.hashCode(), snapshot.hashCode());
+  }
+
+  @Test
+  public void testTransformAndEncode() {
+    BSONDocument document = document();
+    BSONDocument transformed = IMMUTABLE.transform(document);
+    assertTrue(transformed instanceof ImmutableBSONDocument);
+    assertSame(transformed, IMMUTABLE.transform(transformed));
+
+    Buffer expected = Buffer.buffer();
+    BSON.encodeToWire(expected, document);
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, transformed);
+    assertEquals(expected, buffer);
+  }
+
+  @Test
+  public void testMutableDeliveryByDefault() {
+    BSONDocument document = document();
+    assertSame(document, BSON.transform(document));
+  }
+
+  private static void assertThrows(Runnable runnable) {
+    try {
+      runnable.run();
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class JSONTranscoderTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  @Test
+  public void testPlainJSON() {
+    BSONDocument json = new BSONDocument();
+    json.put("string", "ação \"quoted\" \n 😀");
+    json.put("int", -5);
+    json.put("long", 5000000000L);
+    json.put("double", 0.25);
+    json.put("exp", 1.5e300);
+    json.put("true", true);
+    json.put("false", false);
+    json.put("null", null);
+    BSONDocument nested = new BSONDocument();
+    nested.put("list", Arrays.asList(1, "two", new BSONDocument()));
+    json.put("nested", nested);
+
+    Buffer expected = Buffer.buffer();
+    BSON.encodeToWire(expected, json);
+
+    String text = "{ \"string\": \"a\\u00e7\\u00e3o \\\"quoted\\\" \\n \\ud83d\\ude00\", \"int\": -5, " +
+        "\"long\": 5000000000, \"double\": 0.25, \"exp\": 1.5e300, \"true\": true, \"false\": false, " +
+        "\"null\": null, \"nested\": {\"list\": [1, \"two\", {}]} }";
+    Buffer bson = JSONTranscoder.toBSON(utf8(text));
+
+    assertArrayEquals(expected.getBytes(), bson.getBytes());
+  }
+
+  @Test
+  public void testNumbers() {
+    Map<String, Object> document = decode("{\"a\": 2147483647, \"b\": 2147483648, \"c\": -9223372036854775808, " +
+        "\"d\": 9223372036854775808, \"e\": 1.0, \"f\": -0.0, \"g\": 123456789.123456789, \"h\": 1E-7}");
+
+    assertEquals(Integer.MAX_VALUE, document.get("a"));
+    assertEquals(2147483648L, document.get("b"));
+    assertEquals(Long.MIN_VALUE, document.get("c"));
+    assertEquals(9223372036854775808d, document.get("d"));
+    assertEquals(1.0, document.get("e"));
+    assertEquals(-0.0, document.get("f"));
+    assertEquals(123456789.123456789, document.get("g"));
+    assertEquals(1E-7, document.get("h"));
+  }
+
+  @Test
+  public void testExtendedJSON() {
+    Map<String, Object> document = decode("{\"_id\": {\"$oid\": \"4d88e15b60f486e428412dc9\"}, " +
+        "\"when\": {\"$date\": \"2015-06-01T10:20:30.456Z\"}, " +
+        "\"old\": {\"$date\": {\"$numberLong\": \"-1000\"}}, " +
+        "\"n\": {\"$numberLong\": \"7\"}, " +
+        "\"d\": {\"$numberDecimal\": \"1.10\"}, " +
+        "\"bin\": {\"$binary\": {\"subType\": \"00\", \"base64\": \"AQID\"}}, " +
+        "\"re\": {\"$regularExpression\": {\"options\": \"i\", \"pattern\": \"^a\\\\d\"}}, " +
+        "\"min\": {\"$minKey\": 1}, " +
+        "\"update\": {\"$set\": {\"x\": 1}}}");
+
+    assertEquals(new ObjectId("4d88e15b60f486e428412dc9"), document.get("_id"));
+    assertEquals(new Date(1433154030456L), document.get("when"));
+    assertEquals(new Date(-1000), document.get("old"));
+    assertEquals(7L, document.get("n"));
+    assertEquals(Decimal128.parse("1.10"), document.get("d"));
+    assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) document.get("bin"));
+    Pattern pattern = (Pattern) document.get("re");
+    assertEquals("^a\\d", pattern.pattern());
+    assertEquals(Pattern.CASE_INSENSITIVE, pattern.flags());
+    assertEquals(Key.MIN, document.get("min"));
+    assertEquals(1, ((Map) ((Map) document.get("update")).get("$set")).get("x"));
+  }
+
+  @Test
+  public void testRoundTrip() {
+    BSONDocument json = new BSONDocument();
+    json.put("_id", new ObjectId());
+    json.put("name", "tab\there \u0001");
+    json.put("int", 1);
+    json.put("long", Long.MAX_VALUE);
+    json.put("small", 5L);
+    json.put("double", 3.25);
+    json.put("nan", Double.NaN);
+    json.put("date", new Date(1433154030456L));
+    json.put("ancient", new Date(-62198755200000L));
+    json.put("bytes", new byte[]{-1, 0, 1});
+    json.put("decimal", Decimal128.parse("-12.500"));
+    json.put("regex", Pattern.compile("\"x\"", Pattern.MULTILINE));
+    json.put("max", Key.MAX);
+    json.put("list", Arrays.asList(true, null, new BSONDocument().put("a", "b")));
+
+    Buffer bson = Buffer.buffer();
+    BSON.encodeToWire(bson, json);
+
+    String text = JSONTranscoder.toJSON(bson);
+    assertTrue(text, text.contains("\"date\":{\"$date\":\"2015-06-01T10:20:30.456Z\"}"));
+    assertTrue(text, text.contains("\"ancient\":{\"$date\":{\"$numberLong\":\"-62198755200000\"}}"));
+    assertTrue(text, text.contains("\"long\":9223372036854775807"));
+    assertTrue(text, text.contains("\"small\":{\"$numberLong\":\"5\"}"));
+
+    assertArrayEquals(bson.getBytes(), JSONTranscoder.toBSON(utf8(text)).getBytes());
+  }
+
+  @Test
+  public void testCodeSymbolAndDBPointerRoundTrip() {
+    String text = "{\"code\":{\"$code\":\"return 1\"}," +
+        "\"scoped\":{\"$code\":\"return x\",\"$scope\":{\"x\":1}}," +
+        "\"symbol\":{\"$symbol\":\"s\"}," +
+        "\"pointer\":{\"$dbPointer\":{\"$ref\":\"db.c\",\"$id\":{\"$oid\":\"4d88e15b60f486e428412dc9\"}}}}";
+
+    Buffer bson = JSONTranscoder.toBSON(utf8(text));
+    assertEquals(text, JSONTranscoder.toJSON(bson));
+
+    BSONReader reader = new BSONReader(bson);
+    reader.startDocument();
+    assertEquals(BSONMessageCodec.JSCODE, reader.nextType());
+    reader.readName();
+    reader.skipValue();
+    assertEquals(BSONMessageCodec.JSCODE_WS, reader.nextType());
+    reader.readName();
+    reader.skipValue();
+    assertEquals(BSONMessageCodec.SYMBOL, reader.nextType());
+    reader.readName();
+    reader.skipValue();
+    assertEquals(BSONMessageCodec.DBPOINTER, reader.nextType());
+
+    // the keys of $dbPointer can come in any order
+    assertArrayEquals(bson.getBytes(), JSONTranscoder.toBSON(utf8(text.replace(
+        "{\"$ref\":\"db.c\",\"$id\":{\"$oid\":\"4d88e15b60f486e428412dc9\"}}",
+        "{\"$id\":{\"$oid\":\"4d88e15b60f486e428412dc9\"},\"$ref\":\"db.c\"}"))).getBytes());
+  }
+
+  @Test
+  public void testInvalid() {
+    for (String text : new String[]{"[]", "{", "{\"a\" 1}", "{\"a\": 01}", "{\"a\": tru}", "{\"a\": 1,}",
+        "{\"a\": \"\u0001\"}", "{\"\\u0000\": 1}", "{\"a\": {\"$oid\": \"zz\"}}", "{} x"}) {
+      try {
+        JSONTranscoder.toBSON(utf8(text));
+        fail(text);
+      } catch (DecodeException e) {
+        // expected
+      }
+    }
+  }
+
+  private static Map<String, Object> decode(String text) {
+    return BSON.decodeFromWire(0, JSONTranscoder.toBSON(utf8(text)));
+  }
+
+  private static Buffer utf8(String text) {
+    return Buffer.buffer(text.getBytes(StandardCharsets.UTF_8));
+  }
+}
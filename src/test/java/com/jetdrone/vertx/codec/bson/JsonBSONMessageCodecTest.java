@@ -0,0 +1,80 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class JsonBSONMessageCodecTest {
+
+  private static final JsonObjectBSONMessageCodec OBJECT_CODEC = new JsonObjectBSONMessageCodec();
+  private static final JsonArrayBSONMessageCodec ARRAY_CODEC = new JsonArrayBSONMessageCodec();
+
+  @Test
+  public void testObjectRoundTrip() {
+    JsonObject json = new JsonObject()
+        .put("string", "ação")
+        .put("int", 1)
+        .put("long", 5000000000L)
+        .put("double", 0.5)
+        .put("float", 0.25f)
+        .put("bool", true)
+        .putNull("null")
+        .put("binary", new byte[]{1, 2, 3})
+        .put("nested", new JsonObject().put("a", new JsonArray().add(1).add(new JsonObject().put("b", "c"))));
+
+    Buffer buffer = Buffer.buffer();
+    OBJECT_CODEC.encodeToWire(buffer, json);
+
+    // same bytes as the BSON codec
+    BSONDocument document = new BSONMessageCodec().decodeFromWire(0, buffer);
+    assertEquals("ação", document.get("string"));
+    assertEquals(5000000000L, document.get("long"));
+
+    JsonObject decoded = OBJECT_CODEC.decodeFromWire(0, buffer);
+    assertEquals(json.put("float", 0.25d).encode(), decoded.encode());
+    assertArrayEquals(new byte[]{1, 2, 3}, decoded.getBinary("binary"));
+    assertEquals("c", decoded.getJsonObject("nested").getJsonArray("a").getJsonObject(1).getString("b"));
+  }
+
+  @Test
+  public void testArrayRoundTrip() {
+    JsonArray json = new JsonArray().add("a").add(2).add(new JsonObject().put("x", new JsonArray())).addNull();
+
+    Buffer buffer = Buffer.buffer();
+    ARRAY_CODEC.encodeToWire(buffer, json);
+
+    assertEquals(json.encode(), ARRAY_CODEC.decodeFromWire(0, buffer).encode());
+  }
+
+  @Test
+  public void testBSONTypes() {
+    BSONDocument document = new BSONDocument();
+    document.put("_id", new ObjectId("4d88e15b60f486e428412dc9"));
+    document.put("when", new Date(1433154030456L));
+    document.put("price", Decimal128.parse("9.99"));
+
+    Buffer buffer = Buffer.buffer();
+    new BSONMessageCodec().encodeToWire(buffer, document);
+
+    JsonObject json = OBJECT_CODEC.decodeFromWire(0, buffer);
+    assertEquals("4d88e15b60f486e428412dc9", json.getJsonObject("_id").getString("$oid"));
+    assertEquals("2015-06-01T10:20:30.456Z", json.getJsonObject("when").getString("$date"));
+    assertEquals("9.99", json.getJsonObject("price").getString("$numberDecimal"));
+    // plain JSON text
+    assertEquals(json, new JsonObject(json.encode()));
+  }
+
+  @Test
+  public void testTransformCopies() {
+    JsonObject json = new JsonObject().put("a", new JsonObject().put("b", 1));
+    JsonObject copy = OBJECT_CODEC.transform(json);
+
+    copy.getJsonObject("a").put("b", 2);
+    assertEquals(1, (int) json.getJsonObject("a").getInteger("b"));
+  }
+}
@@ -0,0 +1,131 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedBSONFileTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static List<BSONDocument> documents(int count) {
+    List<BSONDocument> documents = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      BSONDocument json = new BSONDocument();
+      json.put("i", i);
+      json.put("name", "document ação " + i);
+      json.put("pad", new byte[i % 300]);
+      documents.add(json);
+    }
+    return documents;
+  }
+
+  @Test
+  public void testAppendAndScanAcrossSegments() throws Exception {
+    Path file = folder.newFile("dump.bson").toPath();
+    List<BSONDocument> expected = documents(500);
+
+    long size = 0;
+    try (MappedBSONFile out = MappedBSONFile.append(file, 1024)) {
+      for (int i = 0; i < expected.size(); i++) {
+        if (i % 2 == 0) {
+          out.append(expected.get(i));
+        } else {
+          Buffer buffer = Buffer.buffer();
+          BSON.encodeToWire(buffer, expected.get(i));
+          out.append(buffer);
+        }
+      }
+      size = out.size();
+    }
+
+    assertEquals(size, Files.size(file));
+
+    List<BSONDocument> documents = new ArrayList<>();
+    try (MappedBSONFile in = MappedBSONFile.open(file, 4096)) {
+      for (Buffer document : in) {
+        documents.add(BSON.decodeFromWire(0, document));
+      }
+    }
+
+    assertEquals(expected.size(), documents.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).get("i"), documents.get(i).get("i"));
+      assertEquals(expected.get(i).get("name"), documents.get(i).get("name"));
+      assertEquals(((byte[]) expected.get(i).get("pad")).length, ((byte[]) documents.get(i).get("pad")).length);
+    }
+  }
+
+  @Test
+  public void testReopenForAppend() throws Exception {
+    Path file = folder.newFile("append.bson").toPath();
+    List<BSONDocument> expected = documents(2);
+
+    try (MappedBSONFile out = MappedBSONFile.append(file)) {
+      out.append(expected.get(0));
+    }
+    try (MappedBSONFile out = MappedBSONFile.append(file)) {
+      out.append(expected.get(1));
+    }
+
+    int count = 0;
+    try (MappedBSONFile in = MappedBSONFile.open(file)) {
+      for (Buffer document : in) {
+        assertEquals(count++, new RawBSONDocument(document).get("i"));
+      }
+    }
+    assertEquals(2, count);
+  }
+
+  @Test
+  public void testReopenAfterCrash() throws Exception {
+    Path file = folder.newFile("crash.bson").toPath();
+    List<BSONDocument> expected = documents(3);
+
+    long size;
+    try (MappedBSONFile out = MappedBSONFile.append(file)) {
+      out.append(expected.get(0));
+      out.append(expected.get(1));
+      size = out.size();
+    }
+    // what close() would have truncated: the rest of the last mapped segment
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4096), size);
+    }
+
+    try (MappedBSONFile in = MappedBSONFile.open(file)) {
+      int count = 0;
+      for (Buffer document : in) {
+        assertEquals(count++, new RawBSONDocument(document).get("i"));
+      }
+      assertEquals(2, count);
+    }
+
+    try (MappedBSONFile out = MappedBSONFile.append(file)) {
+      assertEquals(size, out.size());
+      out.append(expected.get(2));
+    }
+
+    int count = 0;
+    try (MappedBSONFile in = MappedBSONFile.open(file)) {
+      for (Buffer document : in) {
+        assertEquals(count++, new RawBSONDocument(document).get("i"));
+      }
+    }
+    assertEquals(3, count);
+  }
+}
@@ -2,11 +2,16 @@ package com.jetdrone.vertx.codec.bson;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.test.core.VertxTestBase;
 import org.junit.Test;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class ModuleIntegrationTest extends VertxTestBase {
 
   @Test
@@ -78,4 +83,65 @@ public class ModuleIntegrationTest extends VertxTestBase {
     eb.send("bson.local.times2.handler", msg, cb);
     await();
   }
+
+  @Test
+  public void testPreEncodedDocumentOverRawBSON() {
+
+    EventBus eb = vertx.eventBus();
+
+    eb.registerDefaultCodec(RawBSONDocument.class, new RawBSONMessageCodec());
+
+    eb.consumer("bson.raw.handler", (Message<RawBSONDocument> msg) -> {
+      assertEquals(5, msg.body().get("value"));
+      testComplete();
+    });
+
+    BSONWriter writer = new BSONWriter();
+    writer.writeStartDocument().writeInt32("value", 5).writeEndDocument();
+
+    eb.send("bson.raw.handler", writer.toDocument());
+    await();
+  }
+
+  @Test
+  public void testJsonObjectOverBSON() {
+
+    EventBus eb = vertx.eventBus();
+
+    AtomicInteger used = new AtomicInteger();
+    eb.registerCodec(new JsonObjectBSONMessageCodec() {
+      @Override
+      public JsonObject transform(JsonObject json) {
+        used.incrementAndGet();
+        return super.transform(json);
+      }
+    });
+    eb.registerCodec(new JsonArrayBSONMessageCodec() {
+      @Override
+      public JsonArray transform(JsonArray json) {
+        used.incrementAndGet();
+        return super.transform(json);
+      }
+    });
+
+    eb.consumer("bson.json.handler", (Message<JsonObject> msg) -> {
+      assertEquals(5, (int) msg.body().getInteger("value"));
+      msg.reply(new JsonArray().add(msg.body().getInteger("value") * 2),
+          new DeliveryOptions().setCodecName("JsonArrayBSON"));
+    });
+
+    Handler<AsyncResult<Message<JsonArray>>> cb = (reply) -> {
+      if (reply.failed()) {
+        fail();
+      } else {
+        assertEquals(10, (int) reply.result().body().getInteger(0));
+        assertEquals(2, used.get());
+        testComplete();
+      }
+    };
+
+    eb.send("bson.json.handler", new JsonObject().put("value", 5),
+        new DeliveryOptions().setCodecName("JsonObjectBSON"), cb);
+    await();
+  }
 }
@@ -0,0 +1,67 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NestedDocumentTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  @Test
+  public void testNestedDocumentAndArray() {
+    BSONDocument json = new BSONDocument();
+    BSONDocument sub = new BSONDocument();
+    sub.put("a", Arrays.asList(1, 2));
+    json.put("_", sub);
+
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, json);
+
+    byte[] expected = new byte[]{
+        // length
+        0x23, 0x00, 0x00, 0x00,
+        0x03, '_', 0x00,
+        // sub document
+        0x1b, 0x00, 0x00, 0x00,
+        0x04, 'a', 0x00,
+        // array
+        0x13, 0x00, 0x00, 0x00,
+        0x10, '0', 0x00, 0x01, 0x00, 0x00, 0x00,
+        0x10, '1', 0x00, 0x02, 0x00, 0x00, 0x00,
+        0x00,
+        0x00,
+        // end
+        0x00
+    };
+
+    assertArrayEquals(expected, buffer.getBytes());
+
+    // reverse
+    Map document = BSON.decodeFromWire(0, Buffer.buffer(expected));
+    assertEquals(json, document);
+  }
+
+  @Test
+  public void testDeepNestingAfterExistingContent() {
+    BSONDocument json = new BSONDocument();
+    BSONDocument current = json;
+    for (int i = 0; i < 100; i++) {
+      BSONDocument next = new BSONDocument();
+      current.put("level", i);
+      current.put("next", next);
+      current = next;
+    }
+
+    Buffer buffer = Buffer.buffer().appendString("prefix");
+    BSON.encodeToWire(buffer, json);
+
+    Map document = BSON.decodeFromWire(6, buffer);
+    assertEquals(json, document);
+  }
+}
@@ -1,7 +1,11 @@
 package com.jetdrone.vertx.codec.bson;
 
+import io.vertx.core.buffer.Buffer;
 import org.junit.Test;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static org.junit.Assert.*;
 
 public class ObjectIdTest {
@@ -78,4 +82,134 @@ public class ObjectIdTest {
     assertTrue(oid.equals(oid2));
     assertFalse(oid == oid2);
   }
+
+  @Test
+  public void testObjectIdHashCode() throws Exception {
+    assertEquals(new ObjectId("4d88e15b60f486e428412dc9").hashCode(), new ObjectId("4D88E15B60F486E428412DC9").hashCode());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidHex() throws Exception {
+    new ObjectId("4d88e15b60f486e428412dcx");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLength() throws Exception {
+    new ObjectId("4d88e15b60f486e428412d");
+  }
+
+  @Test
+  public void testCompare() throws Exception {
+    ObjectId a = new ObjectId("4d88e15b60f486e428412dc9");
+    ObjectId b = new ObjectId("4d88e15b60f486e428412dca");
+    ObjectId c = new ObjectId("f00000000000000000000000");
+
+    assertTrue(a.compareTo(b) < 0);
+    assertTrue(b.compareTo(a) > 0);
+    assertEquals(0, a.compareTo(new ObjectId(a.toString())));
+    // timestamps are unsigned
+    assertTrue(a.compareTo(c) < 0);
+  }
+
+  @Test
+  public void testWriteTo() throws Exception {
+    ObjectId oid = new ObjectId("4d88e15b60f486e428412dc9");
+    Buffer buffer = Buffer.buffer();
+    buffer.appendByte((byte) 1);
+    oid.writeTo(buffer);
+
+    assertEquals(13, buffer.length());
+    assertArrayEquals(oid.getBytes(), buffer.getBytes(1, 13));
+    assertEquals(oid, new ObjectId(buffer, 1));
+    assertEquals(oid, new ObjectId(oid.getBytes()));
+  }
+
+  @Test
+  public void testConcurrentCreate() throws Exception {
+    final Set<ObjectId> ids = ConcurrentHashMap.newKeySet();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 10000; j++) {
+          ids.add(new ObjectId());
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40000, ids.size());
+  }
+
+  @Test
+  public void testIdentity() throws Exception {
+    try {
+      ObjectId.setIdentity(ObjectIdIdentity.of("aabbccddee"));
+      ObjectId oid = new ObjectId();
+      assertArrayEquals(new byte[]{(byte) 0xaa, (byte) 0xbb, (byte) 0xcc}, oid.getMachine());
+      assertEquals(0xddee, oid.getPid());
+    } finally {
+      ObjectId.setIdentity(ObjectIdIdentity.random());
+    }
+  }
+
+  @Test
+  public void testIdentityStrategies() throws Exception {
+    assertEquals(0xaabbccddeeL, ObjectIdIdentity.of("AABBCCDDEE").value());
+
+    for (ObjectIdIdentity identity : new ObjectIdIdentity[]{ObjectIdIdentity.random(), ObjectIdIdentity.legacy()}) {
+      long value = identity.value();
+      assertTrue(value >= 0 && value <= 0xffffffffffL);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidIdentity() throws Exception {
+    ObjectIdIdentity.of("aabbccddeeff");
+  }
+
+  @Test
+  public void testGenerateIntoBuffer() throws Exception {
+    Buffer buffer = Buffer.buffer().appendByte((byte) 1);
+    ObjectId.generate(buffer, 1000);
+    assertEquals(1 + 12 * 1000, buffer.length());
+
+    ObjectId first = new ObjectId(buffer, 1);
+    for (int i = 1; i < 1000; i++) {
+      ObjectId oid = new ObjectId(buffer, 1 + 12 * i);
+      assertEquals(first.getTimestamp(), oid.getTimestamp());
+      assertEquals((first.getIncrement() + i) & 0xffffff, oid.getIncrement());
+    }
+    // the range is reserved
+    assertEquals((first.getIncrement() + 1000) & 0xffffff, new ObjectId().getIncrement());
+  }
+
+  @Test
+  public void testGenerateIntoArrays() throws Exception {
+    int[] timestamps = new int[10];
+    long[] rest = new long[10];
+    ObjectId.generate(timestamps, rest, 2, 8);
+
+    assertEquals(0, timestamps[1]);
+    ObjectId first = new ObjectId(timestamps[2], rest[2]);
+    assertEquals(first.getTimestamp(), timestamps[9]);
+    assertEquals((first.getIncrement() + 7) & 0xffffff, new ObjectId(timestamps[9], rest[9]).getIncrement());
+  }
+
+  @Test
+  public void testGenerateNone() throws Exception {
+    Buffer buffer = Buffer.buffer().appendByte((byte) 1);
+    ObjectId.generate(buffer, 0);
+    assertEquals(1, buffer.length());
+    assertEquals(1, buffer.getByte(0));
+
+    Buffer empty = Buffer.buffer();
+    ObjectId.generate(empty, 0);
+    assertEquals(0, empty.length());
+
+    int increment = new ObjectId().getIncrement();
+    ObjectId.generate(new int[0], new long[0], 0, 0);
+    assertEquals((increment + 1) & 0xffffff, new ObjectId().getIncrement());
+  }
 }
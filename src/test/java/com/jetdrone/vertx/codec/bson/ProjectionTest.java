@@ -0,0 +1,96 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProjectionTest {
+
+  private static Buffer encode() {
+    BSONDocument tenant = new BSONDocument();
+    tenant.put("id", 42);
+    tenant.put("name", "acme");
+
+    BSONDocument meta = new BSONDocument();
+    meta.put("tenant", tenant);
+    meta.put("trace", "abc");
+
+    BSONDocument item0 = new BSONDocument();
+    item0.put("sku", "a");
+    item0.put("qty", 1);
+    BSONDocument item1 = new BSONDocument();
+    item1.put("sku", "b");
+    item1.put("qty", 2);
+
+    BSONDocument document = new BSONDocument();
+    document.put("type", "order");
+    document.put("meta", meta);
+    document.put("items", Arrays.asList(item0, item1));
+    document.put("payload", new byte[1024]);
+
+    Buffer buffer = Buffer.buffer();
+    new BSONMessageCodec().encodeToWire(buffer, document);
+    return buffer;
+  }
+
+  @Test
+  public void testTopLevelFields() {
+    BSONMessageCodec codec = new BSONMessageCodec(new BSONCodecOptions().setProjection(Arrays.asList("type", "meta")));
+    BSONDocument document = codec.decodeFromWire(0, encode());
+
+    assertEquals(2, document.size());
+    assertEquals("order", document.get("type"));
+    assertEquals(42, ((BSONDocument) ((BSONDocument) document.get("meta")).get("tenant")).get("id"));
+  }
+
+  @Test
+  public void testNestedPaths() {
+    BSONDocument document = new BSONMessageCodec()
+        .decodeFromWire(0, encode(), Arrays.asList("meta.tenant.id", "items.sku"));
+
+    assertEquals(2, document.size());
+    BSONDocument meta = (BSONDocument) document.get("meta");
+    assertEquals(1, meta.size());
+    BSONDocument tenant = (BSONDocument) meta.get("tenant");
+    assertEquals(Collections.singletonMap("id", 42), tenant);
+
+    List<?> items = (List<?>) document.get("items");
+    assertEquals(2, items.size());
+    assertEquals(Collections.singletonMap("sku", "a"), items.get(0));
+    assertEquals(Collections.singletonMap("sku", "b"), items.get(1));
+  }
+
+  @Test
+  public void testShorterPathWins() {
+    BSONDocument document = new BSONMessageCodec()
+        .decodeFromWire(0, encode(), Arrays.asList("meta.tenant.id", "meta"));
+
+    assertEquals(2, ((BSONDocument) document.get("meta")).size());
+  }
+
+  @Test
+  public void testPathThroughScalarIsExcluded() {
+    BSONDocument document = new BSONMessageCodec().decodeFromWire(0, encode(), Arrays.asList("type.length", "missing"));
+    assertTrue(document.isEmpty());
+  }
+
+  @Test
+  public void testCompiledProjection() {
+    Projection projection = Projection.compile(Arrays.asList("type", "meta.trace"));
+    BSONMessageCodec codec = new BSONMessageCodec();
+
+    for (int i = 0; i < 2; i++) {
+      BSONDocument document = codec.decodeFromWire(0, encode(), projection);
+      assertEquals(Arrays.asList("type", "meta"), new ArrayList<>(document.keySet()));
+      assertEquals("abc", ((BSONDocument) document.get("meta")).get("trace"));
+      assertEquals(1, ((BSONDocument) document.get("meta")).size());
+    }
+    assertEquals(4, codec.decodeFromWire(0, encode(), (Projection) null).size());
+  }
+}
@@ -0,0 +1,105 @@
+package com.jetdrone.vertx.codec.bson;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RawBSONDocumentTest {
+
+  private static final BSONMessageCodec BSON = new BSONMessageCodec();
+
+  private static BSONDocument sample() {
+    BSONDocument json = new BSONDocument();
+    json.put("hello", "world");
+    json.put("ñ", 1);
+    BSONDocument sub = new BSONDocument();
+    sub.put("a", true);
+    sub.put("b", 5L);
+    json.put("sub", sub);
+    json.put("list", Arrays.asList(1, "two", 3.0));
+    json.put("nil", null);
+    return json;
+  }
+
+  @Test
+  public void testLazyGet() {
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, sample());
+
+    RawBSONDocument raw = new RawBSONDocument(buffer);
+
+    assertEquals(5, raw.size());
+    assertEquals("world", raw.get("hello"));
+    assertEquals(1, raw.get("ñ"));
+    assertNull(raw.get("nil"));
+    assertTrue(raw.containsKey("nil"));
+    assertFalse(raw.containsKey("hell"));
+    assertNull(raw.get("missing"));
+
+    Map sub = (Map) raw.get("sub");
+    assertTrue(sub instanceof RawBSONDocument);
+    assertEquals(true, sub.get("a"));
+    assertEquals(5L, sub.get("b"));
+
+    List list = (List) raw.get("list");
+    assertEquals(3, list.size());
+    assertEquals("two", list.get(1));
+  }
+
+  @Test
+  public void testIterationOrderAndEquality() {
+    BSONDocument json = sample();
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, json);
+
+    RawBSONDocument raw = new RawBSONDocument(buffer);
+    Iterator<String> keys = raw.keySet().iterator();
+    for (String key : json.keySet()) {
+      assertEquals(key, keys.next());
+    }
+    assertFalse(keys.hasNext());
+
+    assertEquals(json, raw);
+    assertEquals(raw, json);
+    assertEquals(json, BSON.decodeFromWire(0, buffer));
+  }
+
+  @Test
+  public void testReEncodeWithoutDecoding() {
+    Buffer buffer = Buffer.buffer();
+    BSON.encodeToWire(buffer, sample());
+
+    BSONDocument wrapper = new BSONDocument();
+    wrapper.put("raw", new RawBSONDocument(buffer));
+
+    Buffer out = Buffer.buffer();
+    BSON.encodeToWire(out, wrapper);
+
+    BSONDocument expected = new BSONDocument();
+    expected.put("raw", sample());
+    Buffer reference = Buffer.buffer();
+    BSON.encodeToWire(reference, expected);
+
+    assertArrayEquals(reference.getBytes(), out.getBytes());
+  }
+
+  @Test
+  public void testCodecSlicesWireBuffer() {
+    RawBSONMessageCodec codec = new RawBSONMessageCodec();
+    Buffer buffer = Buffer.buffer().appendString("header");
+    BSON.encodeToWire(buffer, sample());
+
+    RawBSONDocument raw = codec.decodeFromWire(6, buffer);
+    assertEquals("world", raw.get("hello"));
+
+    Buffer out = Buffer.buffer();
+    codec.encodeToWire(out, raw);
+    assertArrayEquals(buffer.getBytes(6, buffer.length()), out.getBytes());
+  }
+}
@@ -0,0 +1,55 @@
+package com.jetdrone.vertx.codec.bson.impl;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import static org.junit.Assert.assertEquals;
+
+public class ISODateTest {
+
+  private static final long[] SAMPLES = {
+      0, 1, -1, 951782400000L, 951868799999L, 1433154030456L, -62167219200000L, 253402300799999L
+  };
+
+  @Test
+  public void testAppendMatchesJavaTime() {
+    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSS'Z'")
+        .withZone(java.time.ZoneOffset.UTC);
+    for (long millis : SAMPLES) {
+      Buffer buffer = Buffer.buffer();
+      ISODate.append(buffer, millis);
+      assertEquals(formatter.format(Instant.ofEpochMilli(millis)), buffer.toString());
+      assertEquals(millis, ISODate.parse(buffer, 0, buffer.length()));
+    }
+  }
+
+  @Test
+  public void testOutOfRange() {
+    Buffer buffer = Buffer.buffer();
+    ISODate.append(buffer, 253402300800000L);
+    assertEquals("+10000-01-01T00:00:00Z", buffer.toString());
+  }
+
+  @Test
+  public void testParse() {
+    assertEquals(0, parse("1970-01-01T00:00:00Z"));
+    assertEquals(500, parse("1970-01-01T00:00:00.5Z"));
+    assertEquals(123, parse("1970-01-01T00:00:00.123456789Z"));
+    // other offsets go through java.time
+    assertEquals(0, parse("1970-01-01T01:00:00+01:00"));
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void testInvalid() {
+    parse("1970-02-30T00:00:00Z");
+  }
+
+  private static long parse(String text) {
+    Buffer buffer = Buffer.buffer(text);
+    return ISODate.parse(buffer, 0, buffer.length());
+  }
+}
@@ -0,0 +1,62 @@
+package com.jetdrone.vertx.codec.bson.impl;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ScratchTest {
+
+  @Test
+  public void testReused() {
+    Buffer first = Scratch.acquire();
+    first.appendString("hello");
+    Scratch.release(first);
+
+    Buffer second = Scratch.acquire();
+    assertSame(first, second);
+    assertEquals(0, second.length());
+    Scratch.release(second);
+  }
+
+  @Test
+  public void testNested() {
+    Buffer outer = Scratch.acquire();
+    Buffer inner = Scratch.acquire();
+    assertNotSame(outer, inner);
+    Scratch.release(inner);
+    Scratch.release(outer);
+
+    assertSame(outer, Scratch.acquire());
+    Scratch.release(outer);
+  }
+
+  @Test
+  public void testOversizedDropped() {
+    Buffer buffer = Scratch.acquire();
+    buffer.appendBytes(new byte[128 * 1024]);
+    Scratch.release(buffer);
+
+    assertEquals(256, Scratch.capacity());
+    Buffer next = Scratch.acquire();
+    assertNotSame(buffer, next);
+    Scratch.release(next);
+  }
+
+  @Test
+  public void testShrinks() {
+    Buffer buffer = Scratch.acquire();
+    buffer.appendBytes(new byte[8 * 1024]);
+    Scratch.release(buffer);
+    int capacity = Scratch.capacity();
+    assertTrue(capacity >= 8 * 1024);
+
+    for (int i = 0; i < 64; i++) {
+      Scratch.release(Scratch.acquire().appendByte((byte) 1));
+    }
+    assertEquals(capacity / 2, Scratch.capacity());
+  }
+}
@@ -0,0 +1,89 @@
+package com.jetdrone.vertx.codec.bson.impl;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class UTF8Test {
+
+  private static final String[] SAMPLES = {
+      "",
+      "hello world",
+      "ação",
+      "€uro",
+      "emoji 😀 pair",
+      "lone \uD800 high",
+      "lone \uDC00 low",
+      "trailing high \uD800"
+  };
+
+  @Test
+  public void testEncodeMatchesJDK() {
+    for (String sample : SAMPLES) {
+      byte[] expected = sample.getBytes(StandardCharsets.UTF_8);
+      assertEquals(sample, expected.length, UTF8.length(sample));
+
+      Buffer buffer = Buffer.buffer(1).appendByte((byte) 'x');
+      UTF8.append(buffer, sample, UTF8.length(sample));
+      assertArrayEquals(sample, expected, buffer.getBytes(1, buffer.length()));
+    }
+  }
+
+  @Test
+  public void testDirectBuffer() {
+    for (String sample : SAMPLES) {
+      byte[] expected = sample.getBytes(StandardCharsets.UTF_8);
+
+      Buffer buffer = Buffer.buffer(Unpooled.directBuffer());
+      UTF8.append(buffer, sample, UTF8.length(sample));
+      assertArrayEquals(sample, expected, buffer.getBytes());
+      assertEquals(new String(expected, StandardCharsets.UTF_8), UTF8.read(buffer, 0, buffer.length()));
+    }
+  }
+
+  @Test
+  public void testDecodeSlice() {
+    Buffer buffer = Buffer.buffer("--ação 😀--");
+    Buffer slice = buffer.slice(2, buffer.length() - 2);
+
+    assertEquals("ação 😀", UTF8.read(slice, 0, slice.length()));
+  }
+
+  @Test
+  public void testBufferReadFromAnother() {
+    Buffer buffer = Buffer.buffer();
+    UTF8.append(buffer, "before", UTF8.length("before"));
+
+    // replaces the ByteBuf wrapped by the buffer
+    Buffer other = Buffer.buffer().appendInt(3).appendString("xyz");
+    buffer.readFromBuffer(0, other);
+    UTF8.append(buffer, "alice", UTF8.length("alice"));
+
+    assertArrayEquals("xyzalice".getBytes(StandardCharsets.UTF_8), buffer.getBytes());
+    assertEquals("xyzalice", new String(buffer.getBytes(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSameBufferGrowing() {
+    // the strings share the ByteBuf of the buffer while it is reallocated underneath
+    Buffer buffer = Buffer.buffer(1);
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      String sample = SAMPLES[i % SAMPLES.length] + i;
+      UTF8.append(buffer, sample, UTF8.length(sample));
+      expected.append(sample);
+      Buffer other = Buffer.buffer(1);
+      UTF8.append(other, sample, UTF8.length(sample));
+      assertEquals(new String(sample.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+          UTF8.read(other, 0, other.length()));
+    }
+    byte[] bytes = expected.toString().getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(bytes, buffer.getBytes());
+    assertEquals(new String(bytes, StandardCharsets.UTF_8), UTF8.read(buffer, 0, buffer.length()));
+  }
+}